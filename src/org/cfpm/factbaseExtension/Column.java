@@ -0,0 +1,136 @@
+/*
+ * Column.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+/** This class is the base class for the columns of a fact base. A column stores the values of one field for all facts,
+ * indexed by fact ID. Numeric fields (NetLogo numbers are always doubles) are stored in a {@link DoubleColumn}, all other
+ * fields in an {@link ObjectColumn}.
+ * 
+ * @author Ruth Meyer
+ *
+ */
+abstract class Column {
+
+	/** Initial number of rows */
+	static final int INITIAL_CAPACITY = 16;
+	/** The key for both 0.0 and -0.0 (see {@link #key(Object)}) */
+	private static final Double ZERO = 0.0;
+	
+	/** Creates a new column suitable for the given (first) value.
+	 * 
+	 * @param value the first value to be stored in the column
+	 * @return a {@link DoubleColumn} for numbers, otherwise an {@link ObjectColumn}
+	 */
+	static Column forValue(Object value) {
+		if (value instanceof Double) {
+			return new DoubleColumn();
+		}
+		return new ObjectColumn();
+	}
+	
+	/** Returns the given value in the form used to hash and compare field values. NetLogo considers 0 and -0 to be equal, but
+	 * {@link Double#equals(Object)} and {@link Double#hashCode()} do not, so -0.0 is mapped to 0.0; all other values are
+	 * returned unchanged. Indexes and lookups by value use this, so they agree with the comparisons in a retrieval.
+	 * 
+	 * @param value a field value
+	 * @return the value to be used as a key
+	 */
+	static Object key(Object value) {
+		if (value instanceof Double && (Double)value == 0.0) {
+			return ZERO;
+		}
+		return value;
+	}
+	
+	/** Returns the value stored in the given row in the form used as a key (see {@link #key(Object)}).
+	 * 
+	 * @param row the row (= fact ID)
+	 * @return the key of the value in this row
+	 */
+	Object getKey(int row) {
+		return key(get(row));
+	}
+	
+	/** Returns the value stored in the given row.
+	 * 
+	 * @param row the row (= fact ID)
+	 * @return the value in this row
+	 */
+	abstract Object get(int row);
+	
+	/** Stores the given value in the given row. If this column cannot hold the value (e.g. a string in a column of
+	 * numbers), the values are moved to a column that can and that column is returned instead.
+	 * 
+	 * @param row the row (= fact ID)
+	 * @param value the value to be stored
+	 * @return the column now holding the values (this column or its replacement)
+	 */
+	abstract Column set(int row, Object value);
+	
+	/** Releases the value stored in the given row (e.g. after the fact was retracted).
+	 * 
+	 * @param row the row (= fact ID)
+	 */
+	abstract void clear(int row);
+	
+	/** Moves the value from one row to another (used for compaction).
+	 * 
+	 * @param from the row to take the value from
+	 * @param to the row to store the value in
+	 */
+	abstract void move(int from, int to);
+	
+	/** Shrinks this column to the given number of rows (used after compaction). The rows beyond must have been cleared.
+	 * 
+	 * @param rows the number of rows in use
+	 */
+	abstract void trim(int rows);
+	
+	/** Checks if the value stored in the given row equals the given value (in the sense of {@link Object#equals(Object)} of
+	 * their keys, see {@link #key(Object)}).
+	 * 
+	 * @param row the row (= fact ID)
+	 * @param value the value to compare with
+	 * @return true, if the values are equal; otherwise, false
+	 */
+	abstract boolean valueEquals(int row, Object value);
+	
+	/** Returns the hash code of the value stored in the given row (the same as {@link Object#hashCode()} of its key, see
+	 * {@link #key(Object)}).
+	 * 
+	 * @param row the row (= fact ID)
+	 * @return the hash code of the value
+	 */
+	abstract int valueHash(int row);
+	
+	/** Returns an estimate of the heap memory used by this column in bytes (not including the stored objects).
+	 * 
+	 * @return estimated number of bytes
+	 */
+	abstract long memoryFootprint();
+	
+}
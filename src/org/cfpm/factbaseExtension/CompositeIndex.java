@@ -0,0 +1,168 @@
+/*
+ * CompositeIndex.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/** This class implements an index over a combination of fields (a "composite index"). It maps each combination of values
+ * occurring in these fields to the posting list of the facts containing it, so that conjunctive equality conditions like
+ * <code>person = x and status = 2</code> are answered with a single hash lookup instead of intersecting single field indexes.
+ * 
+ * The fields are kept in ascending order of their index in the fact base.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class CompositeIndex {
+
+	/** A combination of field values, used as the key of the index */
+	static final class Key {
+		/** The field values */
+		private final Object[] values;
+		/** The hash code of the values */
+		private final int hash;
+
+		/** Creates a key for the given field values. A value -0.0 is replaced by 0.0 (see {@link Column#key(Object)}).
+		 *
+		 * @param values the field values (in the order of the index's fields)
+		 */
+		Key(Object[] values) {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = Column.key(values[i]);
+			}
+			this.values = values;
+			this.hash = Arrays.hashCode(values);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return (o instanceof Key) && hash == ((Key)o).hash && Arrays.equals(values, ((Key)o).values);
+		}
+	}
+
+	/** The indexes of the indexed fields, in ascending order */
+	private final int[] fields;
+	/** The index: combinations of field values mapped to posting lists of fact IDs */
+	private final LinkedHashMap<Key, PostingList> index = new LinkedHashMap<Key, PostingList>();
+
+	/** Creates an empty index over the given fields.
+	 *
+	 * @param fields the indexes of the fields, in ascending order
+	 */
+	CompositeIndex(int[] fields) {
+		this.fields = fields;
+	}
+
+	/** Returns the indexes of the indexed fields.
+	 *
+	 * @return the field indexes, in ascending order
+	 */
+	int[] getFields() {
+		return fields;
+	}
+
+	/** Adds the fact with the given ID to the index.
+	 *
+	 * @param id the fact ID
+	 * @param columns the columns of the fact base
+	 */
+	void add(int id, Column[] columns) {
+		Key key = keyOf(id, columns);
+		PostingList idList = index.get(key);
+		if (idList != null) {
+			idList.add(id);
+		}
+		else {
+			index.put(key, new PostingList(id));
+		}
+	}
+
+	/** Removes the fact with the given ID from the index. Has to be called before the fact's values are cleared from the columns.
+	 *
+	 * @param id the fact ID
+	 * @param columns the columns of the fact base
+	 */
+	void remove(int id, Column[] columns) {
+		Key key = keyOf(id, columns);
+		PostingList idList = index.get(key);
+		if (idList != null) {
+			idList.remove(id);
+			if (idList.isEmpty()) {
+				index.remove(key);
+			}
+		}
+	}
+
+	/** Returns the posting list of the facts with the given combination of values.
+	 *
+	 * @param values the field values (in the order of the index's fields)
+	 * @return the posting list, or null if there are no such facts
+	 */
+	PostingList get(Object[] values) {
+		return index.get(new Key(values));
+	}
+
+	/** Removes all facts from the index.
+	 *
+	 */
+	void clear() {
+		index.clear();
+	}
+
+	/** Returns an estimate of the heap memory used by the posting lists of this index in bytes.
+	 *
+	 * @return estimated number of bytes
+	 */
+	long memoryFootprint() {
+		long bytes = 0;
+		for (PostingList idList : index.values()) {
+			bytes += idList.memoryFootprint();
+		}
+		return bytes;
+	}
+
+	/** Helper method: builds the key for the stored fact with the given ID.
+	 *
+	 * @param id the fact ID
+	 * @param columns the columns of the fact base
+	 * @return the key
+	 */
+	private Key keyOf(int id, Column[] columns) {
+		Object[] values = new Object[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			values[i] = columns[fields[i]].getKey(id);
+		}
+		return new Key(values);
+	}
+
+}
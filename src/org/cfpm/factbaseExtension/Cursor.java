@@ -0,0 +1,116 @@
+/*
+ * Cursor.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Context;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.ExtensionObject;
+import org.nlogo.core.LogoList;
+
+/** This class implements a cursor over the facts of a fact base satisfying a condition, created by <code>factbase:cursor</code>
+ * (see {@link FactBaseCursor}). It keeps the position of a retrieval between calls of <code>factbase:next-page</code> 
+ * (see {@link FactBaseNextPage}), so that a large number of facts can be processed page by page without building one list of 
+ * all of them. 
+ * 
+ * Every page evaluates the condition in the context of the call of next-page: <code>self</code> is the agent calling it and
+ * <code>ticks</code> are the current ticks (see {@link Retrieval#retrieveNext(int, Context)}).
+ * Facts retracted in the meantime are skipped; since fact IDs mark the position, the cursor becomes invalid if the fact base
+ * is compacted.
+ * 
+ * @author Ruth Meyer
+ *
+ */
+public class Cursor implements ExtensionObject {
+
+	/** The retrieval whose position is kept */
+	private final Retrieval retrieval;
+	/** The fact base the retrieval is run on */
+	private final FactBase fb;
+	/** The number of compactions of the fact base when the cursor was created */
+	private final int compactions;
+	
+	/** Creates a cursor for the given retrieval, positioned before the first matching fact.
+	 * 
+	 * @param retrieval the retrieval (not used yet)
+	 */
+	Cursor(Retrieval retrieval) {
+		this.retrieval = retrieval;
+		this.fb = retrieval.getFactBase();
+		this.compactions = fb.getCompactionCount();
+	}
+	
+	/** Returns the next k matching facts and moves the cursor behind them.
+	 * 
+	 * @param k the maximum number of facts wanted
+	 * @param context the NetLogo context of this call
+	 * @return a list of up to k facts (empty if there are no more)
+	 * @throws ExtensionException if the fact base has been compacted since the cursor was created
+	 * @throws LogoException
+	 */
+	LogoList nextPage(int k, Context context) throws ExtensionException, LogoException {
+		if (fb.getCompactionCount() != compactions) {
+			throw new ExtensionException("the factbase has been compacted since the cursor was created");
+		}
+		return retrieval.retrieveNext(k, context);
+	}
+
+	/** 
+	 * @see org.nlogo.core.ExtensionObject#dump(boolean, boolean, boolean)
+	 */
+	@Override
+	public String dump(boolean readable, boolean exportable, boolean reference) {
+		// cursors are not exported; they are only valid while the model runs
+		return "cursor";
+	}
+
+	/** 
+	 * @see org.nlogo.core.ExtensionObject#getExtensionName()
+	 */
+	@Override
+	public String getExtensionName() {
+		return "factbase";
+	}
+
+	/** 
+	 * @see org.nlogo.core.ExtensionObject#getNLTypeName()
+	 */
+	@Override
+	public String getNLTypeName() {
+		return "cursor";
+	}
+
+	/** 
+	 * @see org.nlogo.core.ExtensionObject#recursivelyEqual(java.lang.Object)
+	 */
+	@Override
+	public boolean recursivelyEqual(Object o) {
+		// a cursor is only equal to itself
+		return o == this;
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * DoubleColumn.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import java.util.Arrays;
+
+/** This class implements a column holding numbers as primitive doubles. It is used for fields which contain only numbers.
+ * 
+ * @author Ruth Meyer
+ *
+ */
+class DoubleColumn extends Column {
+
+	/** The values, indexed by fact ID */
+	private double[] values = new double[INITIAL_CAPACITY];
+	/** The smallest whole number with a shared boxed value */
+	private static final int BOXED_MIN = -128;
+	/** Shared boxed values of the whole numbers from {@link #BOXED_MIN} to 1023, so that reading such values (e.g. states
+	 * or ticks) does not allocate, like Integer.valueOf() */
+	private static final Double[] BOXED = new Double[1024 - BOXED_MIN];
+	
+	static {
+		for (int i = 0; i < BOXED.length; i++) {
+			BOXED[i] = (double)(i + BOXED_MIN);
+		}
+	}
+	
+	/** Returns the number stored in the given row, without boxing it.
+	 * 
+	 * @param row the row (= fact ID)
+	 * @return the number in this row
+	 */
+	double getDouble(int row) {
+		return values[row];
+	}
+	
+	@Override
+	Object get(int row) {
+		double v = values[row];
+		int k = (int)v;
+		// -0.0 has to keep its own box
+		if (k == v && k >= BOXED_MIN && k - BOXED_MIN < BOXED.length && (k != 0 || 1 / v > 0)) {
+			return BOXED[k - BOXED_MIN];
+		}
+		return v;
+	}
+
+	@Override
+	Column set(int row, Object value) {
+		if (! (value instanceof Double)) {
+			// not a number: switch to a column of objects
+			ObjectColumn replacement = new ObjectColumn(this, row, Math.max(row + 1, values.length));
+			return replacement.set(row, value);
+		}
+		if (row >= values.length) {
+			values = Arrays.copyOf(values, Math.max(row + 1, values.length * 2));
+		}
+		values[row] = (Double)value;
+		return this;
+	}
+
+	@Override
+	void clear(int row) {
+		// nothing to release
+	}
+
+	@Override
+	void move(int from, int to) {
+		values[to] = values[from];
+	}
+
+	@Override
+	void trim(int rows) {
+		values = Arrays.copyOf(values, Math.max(rows, INITIAL_CAPACITY));
+	}
+
+	@Override
+	boolean valueEquals(int row, Object value) {
+		// same semantics as Double.equals(), except that 0.0 and -0.0 are equal (adding 0.0 turns -0.0 into 0.0)
+		return value instanceof Double && Double.doubleToLongBits(values[row] + 0.0) == Double.doubleToLongBits((Double)value + 0.0);
+	}
+
+	@Override
+	int valueHash(int row) {
+		return Double.hashCode(values[row] + 0.0);
+	}
+
+	@Override
+	long memoryFootprint() {
+		return 16 + 16 + 8L * values.length;
+	}
+
+}
@@ -26,18 +26,28 @@
 
 package org.cfpm.factbaseExtension;
 
+import org.nlogo.api.Dump;
 import org.nlogo.api.ExtensionException;
 import org.nlogo.api.LogoException;
 import org.nlogo.api.LogoListBuilder;
 import org.nlogo.core.ExtensionObject;
 import org.nlogo.core.LogoList;
+import org.nlogo.nvm.AnonymousReporter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Random;
+import java.util.TreeMap;
 
 
 /** This class implements the data type "fact base" that the factbase extension provides. A fact base can be thought of as a table with named
@@ -51,6 +61,8 @@ import java.util.Random;
  * To be able to use indexing (and thus, faster retrieval), each fact is internally assigned an ID, starting with 0. A new fact 
  * will be assigned the highest number so far in use + 1. Retracting a fact will result in its ID being unassigned, thus trying to retrieve a
  * retracted fact will generate an error.
+ * Retracted facts leave holes which can be reclaimed by compacting the fact base, either explicitly or automatically once a given
+ * ratio of facts has been retracted. Compaction renumbers the remaining facts (see {@link #compact()}).
  * 
  * @author Ruth Meyer
  *
@@ -61,16 +73,55 @@ public class FactBase implements ExtensionObject {
 	private int id; 
 	/** The list of field names */
 	private final String[] fieldNames;
-	/** An indexed data structure to store the facts: One hashmap per field, with field values as keys and lists of corresponding fact ids as values */
-	private List<LinkedHashMap<Object, List<Integer>>> facts;	
+	/** An indexed data structure to store the facts: One hashmap per field, with field values as keys and posting lists of corresponding fact ids as values 
+	 * (null for fields without a hash index) */
+	private List<LinkedHashMap<Object, PostingList>> facts;	
+	/** Which fields have a hash index */
+	private boolean[] hashIndexed;
+	/** Name of the index type mapping field values to fact IDs */
+	public static final String HASH_INDEX = "hash";
+	/** Sorted indexes: one tree map per field, with numeric field values as keys and posting lists of corresponding fact ids as values
+	 * (null for fields without a sorted index) */
+	private List<TreeMap<Double, PostingList>> sortedFacts;
+	/** Which fields have a sorted index */
+	private boolean[] sortIndexed;
+	/** Name of the index type keeping the numeric values of a field in order, for range queries */
+	public static final String SORTED_INDEX = "sorted";
+	/** Indexes over combinations of fields */
+	private List<CompositeIndex> compositeIndexes = new ArrayList<CompositeIndex>();
+	/** The maximum number of prepared retrievals kept per fact base */
+	private static final int MAX_PREPARED_RETRIEVALS = 32;
+	/** Cache of prepared retrievals, least recently used ones are dropped first */
+	private final LinkedHashMap<PreparedRetrieval.Key, PreparedRetrieval> preparedRetrievals = 
+			new LinkedHashMap<PreparedRetrieval.Key, PreparedRetrieval>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<PreparedRetrieval.Key, PreparedRetrieval> eldest) {
+			return size() > MAX_PREPARED_RETRIEVALS;
+		}
+	};
 	/** The next available ID for a new fact */
 	private int nextFactID = 0;
-	/** Additional copy of facts as an ordered list for easy access via fact ID */
-	private List<LogoList> orderedFacts = new ArrayList<LogoList>();
-		// PROBLEM: need to clone facts before storing them so they can't be changed from the outside
-		// so for the ordered list of facts we either need an internal Fact class or (deep-)clone the list
-	/** List of IDs of retracted facts */
-	private List<Integer> deleted = new ArrayList<Integer>();
+	/** The facts themselves, stored column by column: one column per field, indexed by fact ID (a column is created with the first fact) */
+	private Column[] columns;
+	/** Index of whole facts, used for duplicate detection and to find the ID of a given fact */
+	private FactHashIndex factIndex;
+	/** Tombstones: the IDs of retracted facts */
+	private BitSet deleted = new BitSet();
+	/** Dense array of the IDs of all facts that have not been retracted (in no particular order) */
+	private int[] liveIDs = new int[16];
+	/** Position of each fact ID in {@link #liveIDs} (only meaningful for facts that have not been retracted) */
+	private int[] livePositions = new int[16];
+	/** The number of facts that have not been retracted */
+	private int liveCount = 0;
+	/** Ratio of retracted facts to all fact IDs above which the fact base is compacted automatically (0 = never) */
+	private double autoCompactRatio = 0;
+	/** Automatic compaction is not worth it for fact bases which have handed out fewer IDs than this */
+	private static final int MIN_AUTO_COMPACT_IDS = 64;
+	/** The number of iterations over the facts in progress (see {@link #beginIteration()}) */
+	private int iterations = 0;
+	/** The number of times this fact base has been compacted, that means its facts have been renumbered */
+	private int compactions = 0;
 	
 	/** Flag to toggle output to the console. Default is false; set to true only for debugging purposes. */
 	public static boolean showDump = false;
@@ -79,26 +130,47 @@ public class FactBase implements ExtensionObject {
 	 * 
 	 */
 	public FactBase() {
-		init();
-		this.fieldNames = new String[]{"unnamed"};
-		createFactBase(fieldNames.length);
+		this(new String[]{"unnamed"});
 	}
 	
-	/** Constructor which defines the structure of the new fact base.
+	/** Constructor which defines the structure of the new fact base. Every field gets a hash index.
 	 * 
 	 * @param fields the list of field names
 	 */
 	public FactBase(String[] fields) {
+		this(fields, allFields(fields.length));
+	}	
+	
+	/** Constructor which defines the structure of the new fact base and which of its fields get a hash index. Fields without
+	 * an index cost less when asserting and retracting facts but cannot be used for value lookups.
+	 * 
+	 * @param fields the list of field names
+	 * @param indexed for every field, whether it is to be indexed
+	 */
+	public FactBase(String[] fields, boolean[] indexed) {
 		init();
 		this.fieldNames = fields;
+		this.hashIndexed = indexed.clone();
+		this.sortIndexed = new boolean[fields.length];
 		createFactBase(fields.length);
-	}	
+	}
+	
+	/** Helper method: returns an array of flags selecting all fields.
+	 * 
+	 * @param len the number of fields
+	 * @return an array of the given length with all entries set to true
+	 */
+	private static boolean[] allFields(int len) {
+		boolean[] all = new boolean[len];
+		Arrays.fill(all, true);
+		return all;
+	}
 	
 	/** Initialises the fact base, that means assigns it an ID and stores it in the overall list of fact bases. 
 	 * 
 	 */
 	private void init(){
-		FactBaseExtension.bases.put(FactBaseExtension.next, this);
+		FactBaseExtension.bases.put(this, FactBaseExtension.next);
 		id = FactBaseExtension.next;
 		FactBaseExtension.next++;		
 	}
@@ -108,18 +180,72 @@ public class FactBase implements ExtensionObject {
 	 * @param len The length = number of fields of a fact
 	 */
 	private void createFactBase(int len){
-		facts = new ArrayList<LinkedHashMap<Object, List<Integer>>>(len);
+		columns = new Column[len];
+		createIndexes(len);
+	}
+	
+	/** Creates the (empty) indexes for the facts.
+	 * 
+	 * @param len The length = number of fields of a fact
+	 */
+	private void createIndexes(int len){
+		facts = new ArrayList<LinkedHashMap<Object, PostingList>>(len);
+		for (int i = 0; i < len; i++) {
+			facts.add(hashIndexed[i] ? new LinkedHashMap<Object, PostingList>() : null);
+		}
+		sortedFacts = new ArrayList<TreeMap<Double, PostingList>>(len);
 		for (int i = 0; i < len; i++) {
-			facts.add(new LinkedHashMap<Object, List<Integer>>());
+			sortedFacts.add(sortIndexed[i] ? new TreeMap<Double, PostingList>() : null);
 		}
+		for (CompositeIndex index : compositeIndexes) {
+			index.clear();
+		}
+		factIndex = new FactHashIndex(this);
 	}
 	
-	/** Returns the size of this fact base, that means the number of facts it contains.
+	/** Returns the size of this fact base, that means the number of facts it contains. Retracted facts are not counted.
 	 * 
 	 * @return number of facts in this fact base
 	 */
 	public int size() {
-		return orderedFacts.size();
+		return liveCount;
+	}
+	
+	/** Returns the ID of the first fact that has not been retracted, or -1 if there is no such fact. Together with
+	 * {@link #nextLiveID(int)} this is used to iterate over all facts in ID order, skipping retracted facts.
+	 * 
+	 * @return the smallest ID of a fact that has not been retracted (or -1)
+	 */
+	int firstLiveID() {
+		return nextLiveID(-1);
+	}
+	
+	/** Returns the ID of the next fact after the given ID that has not been retracted, or -1 if there is no such fact.
+	 * 
+	 * @param id a fact ID (or -1 to start at the beginning)
+	 * @return the smallest ID larger than the given one of a fact that has not been retracted (or -1)
+	 */
+	int nextLiveID(int id) {
+		int next = deleted.nextClearBit(id + 1);
+		return (next < nextFactID) ? next : -1;
+	}
+	
+	/** Returns the ID the next fact asserted will get. All facts asserted so far have smaller IDs.
+	 * 
+	 * @return the next fact ID
+	 */
+	int getNextFactID() {
+		return nextFactID;
+	}
+	
+	/** Returns the ID of the k-th fact that has not been retracted, in no particular order. Used to pick random facts: for
+	 * a random k between 0 and {@link #size()} - 1 this is a uniformly chosen fact.
+	 * 
+	 * @param k a number between 0 and {@link #size()} - 1
+	 * @return the ID of a fact that has not been retracted
+	 */
+	int getLiveID(int k) {
+		return liveIDs[k];
 	}
 	
 	/** Returns the list of field names defining the structure of this fact base
@@ -141,14 +267,358 @@ public class FactBase implements ExtensionObject {
 	}
 	
 	/** Returns the whole field ("column of the table") with the given index as a linked hash map. The field values are used as keys,
-	 * with lists of corresponding fact IDs as values in this hash map.
+	 * with posting lists of corresponding fact IDs as values in this hash map.
 	 * 
 	 * @param index index specifying which field to access
-	 * @return the field as a linked hash map
+	 * @return the field as a linked hash map, or null if the field has no hash index
 	 */
-	protected LinkedHashMap<Object, List<Integer>> getField(int index) {
+	protected LinkedHashMap<Object, PostingList> getField(int index) {
 		return facts.get(index);
 	}
+	
+	/** Returns the sorted index of the field with the given index. The numbers in the field are used as keys, in ascending order,
+	 * with posting lists of corresponding fact IDs as values.
+	 * 
+	 * @param index index specifying which field to access
+	 * @return the sorted index of the field, or null if the field has no sorted index
+	 */
+	TreeMap<Double, PostingList> getSortedField(int index) {
+		return sortedFacts.get(index);
+	}
+	
+	/** Returns the index of the given field name like {@link #getFieldIndex(String)}, but generates an error if there is no such field.
+	 * 
+	 * @param fieldName a field name
+	 * @return index of the given field name
+	 * @throws ExtensionException if the field name does not exist
+	 */
+	int requireFieldIndex(String fieldName) throws ExtensionException {
+		int i = isAField(fieldName);
+		if (i < 0) {
+			throw new ExtensionException(fieldName + " is not defined as a field in the factbase " + toString());
+		}
+		return i;
+	}
+	
+	/** Checks if the field with the given index has a hash index.
+	 * 
+	 * @param field the index of the field
+	 * @return true, if the field is indexed; otherwise, false
+	 */
+	boolean isIndexed(int field) {
+		return hashIndexed[field];
+	}
+	
+	/** Checks if the field with the given index has a sorted index.
+	 * 
+	 * @param field the index of the field
+	 * @return true, if the field has a sorted index; otherwise, false
+	 */
+	boolean isSortIndexed(int field) {
+		return sortIndexed[field];
+	}
+	
+	/** Checks if the field with the given index contains nothing but numbers.
+	 * 
+	 * @param field the index of the field
+	 * @return true, if all values stored in the field are numbers (or there are none); otherwise, false
+	 */
+	boolean isNumeric(int field) {
+		return columns[field] == null || columns[field] instanceof DoubleColumn;
+	}
+	
+	/** Adds an index of the given type to the specified field and fills it with the facts already in the fact base. If the
+	 * field already has such an index, nothing happens. A field can have both a hash index and a sorted index.
+	 * 
+	 * @param fieldName the name of the field to be indexed
+	 * @param type the type of index ({@link #HASH_INDEX} or {@link #SORTED_INDEX})
+	 * @throws ExtensionException if the field name or the index type is invalid
+	 */
+	public void addIndex(String fieldName, String type) throws ExtensionException {
+		int field = requireFieldIndex(fieldName);
+		if (HASH_INDEX.equals(type)) {
+			if (!hashIndexed[field]) {
+				LinkedHashMap<Object, PostingList> index = new LinkedHashMap<Object, PostingList>();
+				for (int id = firstLiveID(); id >= 0; id = nextLiveID(id)) {
+					addToIndex(index, columns[field].getKey(id), id);
+				}
+				facts.set(field, index);
+				hashIndexed[field] = true;
+			}
+		}
+		else if (SORTED_INDEX.equals(type)) {
+			if (!sortIndexed[field]) {
+				TreeMap<Double, PostingList> index = new TreeMap<Double, PostingList>();
+				for (int id = firstLiveID(); id >= 0; id = nextLiveID(id)) {
+					addToSortedIndex(index, columns[field].get(id), id);
+				}
+				sortedFacts.set(field, index);
+				sortIndexed[field] = true;
+			}
+		}
+		else {
+			throw new ExtensionException("unknown index type: " + type + " (use \"" + HASH_INDEX + "\" or \"" + SORTED_INDEX + "\")");
+		}
+	}
+	
+	/** Removes all indexes of the specified field. Facts can still be retrieved by their values in this field, but only by
+	 * scanning all facts.
+	 * 
+	 * @param fieldName the name of the field
+	 * @throws ExtensionException if the field name is invalid
+	 */
+	public void removeIndex(String fieldName) throws ExtensionException {
+		int field = requireFieldIndex(fieldName);
+		facts.set(field, null);
+		hashIndexed[field] = false;
+		sortedFacts.set(field, null);
+		sortIndexed[field] = false;
+	}
+	
+	/** Adds an index over the given combination of fields and fills it with the facts already in the fact base. If there is 
+	 * only one field, this is the same as {@link #addIndex(String, String)}. The order of the fields does not matter, and if
+	 * there already is an index over the same fields, nothing happens. Combinations of fields can only have hash indexes.
+	 * 
+	 * @param fieldNames the names of the fields to be indexed
+	 * @param type the type of index (has to be {@link #HASH_INDEX} for more than one field)
+	 * @throws ExtensionException if any of the field names or the index type is invalid
+	 */
+	public void addIndex(String[] fieldNames, String type) throws ExtensionException {
+		if (fieldNames.length == 1) {
+			addIndex(fieldNames[0], type);
+			return;
+		}
+		if (!HASH_INDEX.equals(type)) {
+			throw new ExtensionException("an index over several fields has to be of type \"" + HASH_INDEX + "\"");
+		}
+		int[] fields = sortedFieldIndices(fieldNames);
+		if (findCompositeIndex(fields) == null) {
+			CompositeIndex index = new CompositeIndex(fields);
+			for (int id = firstLiveID(); id >= 0; id = nextLiveID(id)) {
+				index.add(id, columns);
+			}
+			compositeIndexes.add(index);
+		}
+	}
+	
+	/** Removes the index over the given combination of fields. If there is only one field, this is the same as 
+	 * {@link #removeIndex(String)}.
+	 * 
+	 * @param fieldNames the names of the fields
+	 * @throws ExtensionException if any of the field names is invalid
+	 */
+	public void removeIndex(String[] fieldNames) throws ExtensionException {
+		if (fieldNames.length == 1) {
+			removeIndex(fieldNames[0]);
+			return;
+		}
+		compositeIndexes.remove(findCompositeIndex(sortedFieldIndices(fieldNames)));
+	}
+	
+	/** Joins two fact bases: finds all pairs of facts, one from each fact base, that have equal values in the given fields, and
+	 * combines the values of the given output fields of both facts into one list per pair (the values from the left fact base
+	 * first). Values are equal as for <code>=</code> in a retrieval, in particular 0 and -0 (see {@link Column#key(Object)}).
+	 * The values of one side are looked up in a hash index of the other side, so this takes time proportional to the
+	 * size of one fact base plus the number of pairs. An existing hash index of a join field is used if there is one; otherwise,
+	 * a temporary index of the smaller fact base is built. The order of the pairs depends on which side is looked up.
+	 * 
+	 * @param left the left fact base
+	 * @param leftField the index of the join field in the left fact base
+	 * @param leftOut the indices of the output fields of the left fact base
+	 * @param right the right fact base
+	 * @param rightField the index of the join field in the right fact base
+	 * @param rightOut the indices of the output fields of the right fact base
+	 * @return a list with one list of output values for each pair
+	 */
+	static LogoList join(FactBase left, int leftField, int[] leftOut, FactBase right, int rightField, int[] rightOut) {
+		LogoListBuilder pairs = new LogoListBuilder();
+		if (left.size() == 0 || right.size() == 0) {
+			return pairs.toLogoList();
+		}
+		// decide which side is looked up: an existing index is always preferred, otherwise the smaller side is indexed
+		boolean leftIndexed = left.isIndexed(leftField);
+		boolean rightIndexed = right.isIndexed(rightField);
+		boolean lookUpRight;
+		if (leftIndexed != rightIndexed) {
+			lookUpRight = rightIndexed;
+		}
+		else if (leftIndexed) {
+			lookUpRight = right.size() >= left.size();
+		}
+		else {
+			lookUpRight = right.size() <= left.size();
+		}
+		FactBase scanned = lookUpRight ? left : right;
+		FactBase lookedUp = lookUpRight ? right : left;
+		int scannedField = lookUpRight ? leftField : rightField;
+		Map<Object, PostingList> index = lookedUp.getHashIndex(lookUpRight ? rightField : leftField);
+		for (int id = scanned.firstLiveID(); id >= 0; id = scanned.nextLiveID(id)) {
+			PostingList matches = index.get(scanned.columns[scannedField].getKey(id));
+			if (matches == null) {
+				continue;
+			}
+			for (int other = matches.first(); other >= 0; other = matches.next(other)) {
+				int leftID = lookUpRight ? id : other;
+				int rightID = lookUpRight ? other : id;
+				LogoListBuilder pair = new LogoListBuilder();
+				for (int field : leftOut) {
+					pair.add(left.getValue(leftID, field));
+				}
+				for (int field : rightOut) {
+					pair.add(right.getValue(rightID, field));
+				}
+				pairs.add(pair.toLogoList());
+			}
+		}
+		return pairs.toLogoList();
+	}
+	
+	/** Helper method: returns the hash index of the given field if there is one; otherwise, builds a temporary one (which is not 
+	 * kept up to date).
+	 * 
+	 * @param field the index of the field
+	 * @return a map from the values of the field to the posting lists of corresponding fact IDs
+	 */
+	private Map<Object, PostingList> getHashIndex(int field) {
+		if (hashIndexed[field]) {
+			return facts.get(field);
+		}
+		HashMap<Object, PostingList> index = new HashMap<Object, PostingList>();
+		for (int id = firstLiveID(); id >= 0; id = nextLiveID(id)) {
+			addToIndex(index, columns[field].getKey(id), id);
+		}
+		return index;
+	}
+	
+	/** Returns the distinct values of the given field, optionally with the number of facts carrying each of them, either over 
+	 * all facts or over the facts with the given IDs. Over all facts, an index of the field answers this directly from its keys 
+	 * and the sizes of their posting lists, in time proportional to the number of distinct values: the values of a hash index come
+	 * in the order in which they were first asserted, those of a sorted index in ascending order. Otherwise, the facts are scanned
+	 * and the values come in the order of their first occurrence. Either way, 0 and -0 count as one value, 0 (as for 
+	 * <code>=</code>, see {@link Column#key(Object)}).
+	 * 
+	 * @param field the index of the field
+	 * @param ids the IDs of the facts to be considered, in ascending order, or null for all facts
+	 * @param withCounts if true, a list [value count] is reported for every value instead of the value alone
+	 * @return a list of the distinct values or of the [value count] pairs
+	 */
+	LogoList distinctValues(int field, int[] ids, boolean withCounts) {
+		LogoListBuilder result = new LogoListBuilder();
+		if (ids == null) {
+			Map<?, PostingList> index = null;
+			if (hashIndexed[field]) {
+				index = facts.get(field);
+			}
+			else if (sortIndexed[field] && isNumeric(field)) {
+				index = sortedFacts.get(field);
+			}
+			if (index != null) {
+				for (Map.Entry<?, PostingList> entry : index.entrySet()) {
+					result.add(withCounts ? valueCount(entry.getKey(), entry.getValue().size()) : entry.getKey());
+				}
+				return result.toLogoList();
+			}
+		}
+		// no index to ask: count the values of the facts in question
+		LinkedHashMap<Object, int[]> counts = new LinkedHashMap<Object, int[]>();
+		if (ids == null) {
+			for (int id = firstLiveID(); id >= 0; id = nextLiveID(id)) {
+				countValue(counts, columns[field].getKey(id));
+			}
+		}
+		else {
+			for (int id : ids) {
+				countValue(counts, columns[field].getKey(id));
+			}
+		}
+		for (Map.Entry<Object, int[]> entry : counts.entrySet()) {
+			result.add(withCounts ? valueCount(entry.getKey(), entry.getValue()[0]) : entry.getKey());
+		}
+		return result.toLogoList();
+	}
+	
+	/** Helper method: increments the count of the given value.
+	 * 
+	 * @param counts the counts of the values seen so far
+	 * @param value the value
+	 */
+	private static void countValue(Map<Object, int[]> counts, Object value) {
+		int[] count = counts.get(value);
+		if (count == null) {
+			counts.put(value, new int[]{1});
+		}
+		else {
+			count[0]++;
+		}
+	}
+	
+	/** Helper method: creates the list [value count] reported for a value.
+	 * 
+	 * @param value the value
+	 * @param count the number of facts carrying the value
+	 * @return the list of value and count
+	 */
+	private static LogoList valueCount(Object value, int count) {
+		LogoListBuilder pair = new LogoListBuilder();
+		pair.add(value);
+		pair.add((double) count);
+		return pair.toLogoList();
+	}
+	
+	/** Converts a primitive's argument which is either a single field name or a list of field names into an array of field names.
+	 * 
+	 * @param arg a string or a list of strings
+	 * @return an array of field names
+	 * @throws ExtensionException if the argument is neither a string nor a non-empty list
+	 */
+	static String[] toFieldNames(Object arg) throws ExtensionException {
+		if (arg instanceof String) {
+			return new String[]{(String)arg};
+		}
+		if (arg instanceof LogoList && !((LogoList)arg).isEmpty()) {
+			LogoList list = (LogoList)arg;
+			String[] names = new String[list.size()];
+			for (int i = 0; i < names.length; i++) {
+				names[i] = list.get(i).toString();
+			}
+			return names;
+		}
+		throw new ExtensionException("not a field name or list of field names: " + Dump.logoObject(arg));
+	}
+	
+	/** Helper method: returns the index over exactly the given fields, if there is one.
+	 * 
+	 * @param fields field indexes in ascending order
+	 * @return the index, or null if there is none
+	 */
+	private CompositeIndex findCompositeIndex(int[] fields) {
+		for (CompositeIndex index : compositeIndexes) {
+			if (Arrays.equals(index.getFields(), fields)) {
+				return index;
+			}
+		}
+		return null;
+	}
+	
+	/** Helper method: converts the given field names to field indexes in ascending order.
+	 * 
+	 * @param fieldNames an array of field names
+	 * @return the corresponding field indexes in ascending order
+	 * @throws ExtensionException if a field name is invalid or given more than once
+	 */
+	private int[] sortedFieldIndices(String[] fieldNames) throws ExtensionException {
+		int[] fields = new int[fieldNames.length];
+		for (int i = 0; i < fields.length; i++) {
+			fields[i] = requireFieldIndex(fieldNames[i]);
+		}
+		Arrays.sort(fields);
+		for (int i = 1; i < fields.length; i++) {
+			if (fields[i] == fields[i - 1]) {
+				throw new ExtensionException("field " + this.fieldNames[fields[i]] + " is given more than once");
+			}
+		}
+		return fields;
+	}
 		
 	/** Asserts the given fact to this fact base. If an identical fact already exists in this fact base, nothing happens.
 	 * 
@@ -170,55 +640,217 @@ public class FactBase implements ExtensionObject {
 		
 		// check if this fact is already in the factbase (i.e. if there is already a fact with exactly the same field values)
 		// only assert it if it's NOT already there
-		int id = containsFact(fact);
+		int hash = FactHashIndex.hash(fact);
+		int id = factIndex.find(fact, hash);
 		if (id < 0) {
-			// stick it in the factbase, i.e. split it into fields
-			for (int i = 0; i < fact.size(); i++) {
-				Object fieldValue = fact.get(i);
-				LinkedHashMap<Object, List<Integer>> field = this.facts.get(i);
-				if (field.containsKey(fieldValue)) {
-					// add fact id to list at entry <fieldValue>
-					List<Integer> idList = field.get(fieldValue);
-					idList.add(nextFactID);
-				}
-				else {
-					// make a new list and stick fact id in
-					// then add entry <fieldValue> <fact-id-list>
-					ArrayList<Integer> idList = new ArrayList<Integer>();
-					idList.add(nextFactID);
-					field.put(fieldValue, idList);
+			id = insertFact(fact, hash);
+		}
+		return id;
+	}
+	
+	/** Helper method: stores the given fact under the next available fact ID and updates all indexes. The fact must not be
+	 * contained in the fact base yet.
+	 * 
+	 * @param fact the fact to be stored
+	 * @param hash the fact's hash code as computed by {@link FactHashIndex#hash(LogoList)}
+	 * @return the ID of the new fact
+	 */
+	private int insertFact(LogoList fact, int hash) {
+		int id = nextFactID++;
+		// stick it in the factbase, i.e. split it into fields
+		// (copying the values into the columns means they can't be changed from the outside)
+		for (int i = 0; i < fact.size(); i++) {
+			Object fieldValue = fact.get(i);
+			Column column = (columns[i] == null) ? Column.forValue(fieldValue) : columns[i];
+			Column stored = column.set(id, fieldValue);
+			if (stored != column) {
+				// the column has been converted, which copied the values of retracted facts as well: release them
+				for (int row = deleted.nextSetBit(0); row >= 0; row = deleted.nextSetBit(row + 1)) {
+					stored.clear(row);
 				}
 			}
-			// also stick in the ordered list
-			dump(" ** adding fact " + nextFactID + ": " + printFact(fact));
-			orderedFacts.add(clone(fact));
-			id = nextFactID;
-			// update next fact ID
-			nextFactID++;
+			columns[i] = stored;
 		}
+		if (showDump) {
+			dump(" ** adding fact " + id + ": " + printFact(fact));
+		}
+		indexFact(id, hash);
 		return id;
 	}
 	
-	/** produces a shallow copy of the given fact to be put into the ordered list of facts (this is to avoid manipulation of values from outside the fact base)
+	/** Helper method: adds the stored fact with the given ID to all indexes.
+	 * 
+	 * @param id the fact ID
+	 * @param hash the fact's hash code as computed by {@link FactHashIndex#hash(LogoList)}
+	 */
+	private void indexFact(int id, int hash) {
+		for (int i = 0; i < columns.length; i++) {
+			LinkedHashMap<Object, PostingList> field = this.facts.get(i);
+			if (field != null) {
+				addToIndex(field, columns[i].getKey(id), id);
+			}
+			TreeMap<Double, PostingList> sortedField = this.sortedFacts.get(i);
+			if (sortedField != null) {
+				addToSortedIndex(sortedField, columns[i].get(id), id);
+			}
+		}
+		for (CompositeIndex index : compositeIndexes) {
+			index.add(id, columns);
+		}
+		factIndex.add(id, hash);
+		addLiveID(id);
+	}
+	
+	/** Helper method: adds the given fact ID to the posting list of the given value in the given field index.
+	 * 
+	 * @param field the hash index of a field
+	 * @param fieldValue the value of the field
+	 * @param id the fact ID
+	 */
+	private static <K> void addToIndex(Map<K, PostingList> field, K fieldValue, int id) {
+		PostingList idList = field.get(fieldValue);
+		if (idList != null) {
+			// add fact id to list at entry <fieldValue>
+			idList.add(id);
+		}
+		else {
+			// make a new list and stick fact id in
+			// then add entry <fieldValue> <fact-id-list>
+			field.put(fieldValue, new PostingList(id));
+		}
+	}
+	
+	/** Helper method: removes the given fact ID from the posting list of the given value in the given field index. If the
+	 * posting list becomes empty, the whole entry is removed.
+	 * 
+	 * @param field the index of a field
+	 * @param fieldValue the value of the field
+	 * @param id the fact ID
+	 */
+	private static <K> void removeFromIndex(Map<K, PostingList> field, K fieldValue, int id) {
+		PostingList idList = field.get(fieldValue);
+		idList.remove(id);
+		// check if idList is now empty
+		if (idList.isEmpty()) {
+			// if so, we want to remove the whole entry from this field
+			field.remove(fieldValue);
+		}
+	}
+	
+	/** Helper method: removes the given fact IDs from the posting lists of the given values in the given field index. Posting
+	 * lists which become empty are removed.
+	 * 
+	 * @param field the index of a field
+	 * @param removals the fact IDs to be removed, grouped by field value
+	 */
+	private static <K> void removeAllFromIndex(Map<K, PostingList> field, Map<K, PostingList> removals) {
+		for (Map.Entry<K, PostingList> entry : removals.entrySet()) {
+			PostingList idList = field.get(entry.getKey());
+			idList.removeAll(entry.getValue());
+			if (idList.isEmpty()) {
+				field.remove(entry.getKey());
+			}
+		}
+	}
+	
+	/** Helper method: adds the given fact ID to the given sorted index if the field value is a number. Other values are not
+	 * kept in sorted indexes since they cannot be in any numeric range.
 	 * 
-	 * @param fact the fact to be cloned
-	 * @return a shallow copy of the given fact
+	 * @param field the sorted index of a field
+	 * @param fieldValue the value of the field
+	 * @param id the fact ID
 	 */
-	private LogoList clone(LogoList fact) {
-		List<Object> fcopy = new ArrayList<Object>();
-		for (Iterator<Object> i = fact.javaIterator(); i.hasNext(); ) {
-			Object field = i.next();
-			fcopy.add(field); // only make a shallow copy
+	private static void addToSortedIndex(TreeMap<Double, PostingList> field, Object fieldValue, int id) {
+		if (fieldValue instanceof Double) {
+			addToIndex(field, sortKey((Double)fieldValue), id);
 		}
-		return LogoList.fromJava(fcopy);
+	}
+	
+	/** Helper method: turns a number into a key for a sorted index. Since -0.0 and 0.0 are equal numbers but different keys
+	 * in a tree map, -0.0 is mapped to 0.0.
+	 * 
+	 * @param value a number
+	 * @return the key for the number
+	 */
+	private static Double sortKey(double value) {
+		return value + 0.0;
+	}
+	
+	/** Computes the hash code of the stored fact with the given ID (the same as {@link FactHashIndex#hash(LogoList)} of the fact).
+	 * 
+	 * @param id the fact ID
+	 * @return the fact's hash code
+	 */
+	private int factHash(int id) {
+		int h = 1;
+		for (Column column : columns) {
+			h = 31 * h + column.valueHash(id);
+		}
+		return h;
 	}
 	
 
+	/** Removes the facts with the given IDs from the fact base, as found by a retrieval (see {@link Retrieval#retrieveIDs()}).
+	 * Unlike calling {@link #removeFact(LogoList)} for each fact, the facts do not have to be looked up again, and the IDs are 
+	 * removed from the indexes field by field, with one pass over each posting list concerned. Automatic compaction, if
+	 * necessary, takes place once at the end.
+	 * 
+	 * @param ids the IDs of facts that have not been retracted, in ascending order
+	 */
+	void removeFacts(int[] ids) {
+		for (int id : ids) {
+			factIndex.remove(id, factHash(id));
+		}
+		for (int i = 0; i < columns.length; i++) {
+			LinkedHashMap<Object, PostingList> field = this.facts.get(i);
+			TreeMap<Double, PostingList> sortedField = this.sortedFacts.get(i);
+			if (field == null && sortedField == null) {
+				continue;
+			}
+			// group the IDs by value (the IDs are ascending, so adding them to the posting lists is cheap)
+			HashMap<Object, PostingList> removals = new HashMap<Object, PostingList>();
+			HashMap<Double, PostingList> sortedRemovals = new HashMap<Double, PostingList>();
+			for (int id : ids) {
+				Object fieldValue = columns[i].get(id);
+				if (field != null) {
+					addToIndex(removals, Column.key(fieldValue), id);
+				}
+				if (sortedField != null && fieldValue instanceof Double) {
+					addToIndex(sortedRemovals, sortKey((Double)fieldValue), id);
+				}
+			}
+			if (field != null) {
+				removeAllFromIndex(field, removals);
+			}
+			if (sortedField != null) {
+				removeAllFromIndex(sortedField, sortedRemovals);
+			}
+		}
+		for (CompositeIndex index : compositeIndexes) {
+			for (int id : ids) {
+				index.remove(id, columns);
+			}
+		}
+		// release the values in the columns and mark the IDs as deleted
+		for (Column column : columns) {
+			for (int id : ids) {
+				column.clear(id);
+			}
+		}
+		for (int id : ids) {
+			deleted.set(id);
+			removeLiveID(id);
+		}
+		if (needsCompaction()) {
+			compact();
+		}
+	}
+	
 	// removing a fact results in re-indexing! (= re-numbering all facts with a higher fact ID)
 	// NO, not anymore. IDs are immutable. Removing a fact leaves a "hole" in the list of ordered facts.
 	// Trying to access a deleted fact will result in an error.
 	/** Removes the given fact from the fact base. This includes removing its field value/ID associations from all the internal fields and
-	 *  removing the fact from the list of ordered facts. If the fact is not contained in the fact base, nothing happens.
+	 *  removing the fact's values from the columns. If the fact is not contained in the fact base, nothing happens.
 	 * 
 	 * @param fact the fact to be removed
 	 * @throws ExtensionException if the given fact's structure does not match the structure of the fact base
@@ -236,23 +868,33 @@ public class FactBase implements ExtensionObject {
 		// for now, we'll just do simple facts!!
 		
 		// remove it from the factbase (if it's actually there)
-		int id = containsFact(fact);
+		int hash = FactHashIndex.hash(fact);
+		int id = factIndex.find(fact, hash);
 		if (id >= 0) {
+			factIndex.remove(id, hash);
 			for (int i = 0; i < fact.size(); i++){
 				Object fieldValue = fact.get(i);
-				LinkedHashMap<Object, List<Integer>> field = this.facts.get(i);
-				List<Integer> idList = field.get(fieldValue);
-				idList.remove(new Integer(id));
-				// check if idList is now empty
-				if (idList.isEmpty()) {
-					// if so, we want to remove the whole entry from this field
-					field.remove(fieldValue);
+				LinkedHashMap<Object, PostingList> field = this.facts.get(i);
+				if (field != null) {
+					removeFromIndex(field, Column.key(fieldValue), id);
 				}
+				TreeMap<Double, PostingList> sortedField = this.sortedFacts.get(i);
+				if (sortedField != null && fieldValue instanceof Double) {
+					removeFromIndex(sortedField, sortKey((Double)fieldValue), id);
+				}
+			}
+			for (CompositeIndex index : compositeIndexes) {
+				index.remove(id, columns);
+			}
+			// also release its values in the columns
+			for (Column column : columns) {
+				column.clear(id);
+			}
+			deleted.set(id); // mark its ID as deleted
+			removeLiveID(id);
+			if (needsCompaction()) {
+				compact();
 			}
-			// also remove from ordered list of facts
-			orderedFacts.remove(id);
-			orderedFacts.add(id, null); // replace entry with NULL
-			deleted.add(id); // add its ID to the list of deleted facts
 			// id is a hint whereabouts it can be found
 			//removeFromOrderedList(id, fact);
 			// re-index everything
@@ -262,23 +904,6 @@ public class FactBase implements ExtensionObject {
 		}
 	}
 	
-	private void reIndex(int deleted) {
-		// fact with ID "deleted" was deleted --> all factIDs > deleted need to be shifted down by one
-		// so we just iterate over all fields and all entries in fields and re-number the IDs
-		for (Iterator<LinkedHashMap<Object, List<Integer>>> it = facts.iterator(); it.hasNext(); ) {
-			LinkedHashMap<Object, List<Integer>> field = it.next();
-			for (Iterator<List<Integer>> entries = field.values().iterator(); entries.hasNext(); ) {
-				List<Integer> ids = entries.next();
-				for (int i = 0; i < ids.size(); i++) {
-					int currentID = ids.get(i);
-					if (currentID > deleted) {
-						ids.set(i, (--currentID));
-					}
-				}
-			}
-		}
-	}
-	
 //	private void removeFromOrderedList(int id, List<Object> fact) {
 //		// first check if it's still in the correct place
 //		List<Object> toBeDeleted = orderedFacts.get(id);
@@ -301,51 +926,35 @@ public class FactBase implements ExtensionObject {
 	
 
 	/** Checks if the given fact is contained within this fact base. If so, returns its fact ID. If not, returns -1.
+	 * The lookup goes through the index of whole facts, so it takes time proportional to the number of fields only.
 	 * 
 	 * @param fact the fact to be checked
 	 * @return the fact's ID (or -1 if the fact is not found in the fact base)
-	 * @throws ExtensionException if more than one fact identical to the given facts are found (which should not happen!)
+	 * @throws ExtensionException declared for compatibility with earlier versions; no longer thrown
 	 */
 	public int containsFact(LogoList fact) throws ExtensionException {
-		dump("checking if fact " + printFact(fact) + " is in the factbase");
-		// if factbase is emtpy, fact is not in it
-		if (facts.get(0).isEmpty()) {
-			return -1;
-		}
-		// check if the given fact is already in the fact base, i.e. if there exists a fact ID, which is associated with every single field value of the given fact
-		ArrayList<Integer> potentials = new ArrayList<Integer>();
-		int i = 0;
-		Object fieldValue = fact.get(i);
-		dump("checking field " + i + ": for value " + fieldValue);
-		printIndexedField(i);
-		LinkedHashMap<Object, List<Integer>> field = this.facts.get(i);
-		List<Integer> idList = field.get(fieldValue);
-		if (idList != null) {
-			potentials.addAll(idList); // put first list of fact ids in potentials
-		}
-		i++;
-		while (!potentials.isEmpty() && i < fact.size()) {
-			// check next field
-			fieldValue = fact.get(i);
-			dump("checking field " + i + ": for value " + fieldValue);
-			printIndexedField(i);
-			field = this.facts.get(i);
-			idList = field.get(fieldValue);
-			// remove all fact ids from potentials that are not in idList
-			dump("computing intersection of " + printList(potentials) + " and " + printList(idList));
-			potentials = intersect(potentials, idList);
-			i++;
+		if (showDump) {
+			dump("checking if fact " + printFact(fact) + " is in the factbase");
 		}
-		if (potentials.isEmpty()) {
-			// fact not found --> return -1
-			return -1;
+		return factIndex.find(fact, FactHashIndex.hash(fact));
+	}
+	
+	/** Checks if the fact with the given ID has exactly the given field values. Used by the index of whole facts.
+	 * 
+	 * @param id the ID of a stored fact
+	 * @param fact the field values to compare with
+	 * @return true, if the stored fact is identical to the given fact; otherwise, false
+	 */
+	boolean factEquals(int id, LogoList fact) {
+		if (deleted.get(id) || fact.size() != columns.length) {
+			return false;
 		}
-		else if (potentials.size() == 1) {
-			// fact found --> return its ID
-			return potentials.get(0);
+		for (int i = 0; i < columns.length; i++) {
+			if (!columns[i].valueEquals(id, fact.get(i))) {
+				return false;
+			}
 		}
-		// found more than one fact --> throw an exception
-		throw new ExtensionException("found more than one fact like " + printFact(fact) + " in the factbase. Shock horror!");
+		return true;
 	}
 	
 	/** Returns true if the fact with the given ID has been retracted. Otherwise, returns false.
@@ -354,8 +963,144 @@ public class FactBase implements ExtensionObject {
 	 * @return true, if the fact has been deleted; false, otherwise.
 	 */
 	public boolean isRetracted(int id) {
-		// check if given ID is in deleted list
-		return deleted.contains(id);
+		// check if given ID is marked as deleted
+		return deleted.get(id);
+	}
+	
+	/** Sets the threshold for automatic compaction of this fact base. If the ratio of retracted facts to all fact IDs handed
+	 * out so far exceeds the given ratio after a retraction, the fact base is compacted (see {@link #compact()}).
+	 * A ratio of 0 (the default) switches automatic compaction off. Since compaction renumbers facts, automatic compaction
+	 * should only be switched on if the model does not keep fact IDs (as reported by r-assert) across retractions.
+	 * 
+	 * @param ratio a number between 0 and 1 (0 = never compact automatically)
+	 * @throws ExtensionException if the ratio is not between 0 and 1
+	 */
+	public void setAutoCompactRatio(double ratio) throws ExtensionException {
+		if (ratio < 0 || ratio > 1) {
+			throw new ExtensionException("the ratio for automatic compaction has to be between 0 and 1, not " + ratio);
+		}
+		autoCompactRatio = ratio;
+	}
+	
+	/** Helper method: checks if automatic compaction is switched on and the ratio of retracted facts exceeds its threshold.
+	 * 
+	 * @return true, if this fact base should be compacted now
+	 */
+	private boolean needsCompaction() {
+		return iterations == 0 && autoCompactRatio > 0 && nextFactID >= MIN_AUTO_COMPACT_IDS
+				&& (nextFactID - liveCount) > autoCompactRatio * nextFactID;
+	}
+	
+	/** Marks the start of an iteration over the facts during which NetLogo code is run that may assert or retract facts (see
+	 * {@link FactBaseForeach}). Until the matching call of {@link #endIteration()}, fact IDs must not change, so automatic
+	 * compaction is put off.
+	 * 
+	 */
+	void beginIteration() {
+		iterations++;
+	}
+	
+	/** Marks the end of an iteration over the facts started with {@link #beginIteration()}. Compacts the fact base if 
+	 * automatic compaction has been put off during the iteration.
+	 * 
+	 */
+	void endIteration() {
+		iterations--;
+		if (needsCompaction()) {
+			compact();
+		}
+	}
+	
+	/** Checks if an iteration over the facts is in progress, during which fact IDs must not change.
+	 * 
+	 * @return true, if the facts are being iterated over; otherwise, false
+	 */
+	boolean isIterating() {
+		return iterations > 0;
+	}
+	
+	/** Returns the number of times this fact base has been compacted. Used to detect that fact IDs kept across primitive calls
+	 * (e.g. by a cursor, see {@link FactBaseCursor}) have become invalid.
+	 * 
+	 * @return the number of compactions so far
+	 */
+	int getCompactionCount() {
+		return compactions;
+	}
+	
+	/** Compacts this fact base: reclaims the slots of all retracted facts and rebuilds the indexes. The remaining facts keep
+	 * their order but are renumbered from 0 to {@link #size()} - 1, so IDs handed out earlier (e.g. by r-assert) become
+	 * invalid. The returned array can be used to translate them.
+	 * 
+	 * @return an array mapping every old fact ID to the new ID of that fact (or -1 if the fact had been retracted)
+	 */
+	public int[] compact() {
+		compactions++;
+		int[] newIDs = new int[nextFactID];
+		Arrays.fill(newIDs, -1);
+		// move the remaining facts down within the columns, keeping their order
+		int n = 0;
+		for (int id = firstLiveID(); id >= 0; id = nextLiveID(id)) {
+			newIDs[id] = n;
+			if (id != n) {
+				for (Column column : columns) {
+					column.move(id, n);
+				}
+			}
+			n++;
+		}
+		for (int row = n; row < nextFactID; row++) {
+			for (Column column : columns) {
+				column.clear(row);
+			}
+		}
+		// give back the memory of the rows no longer in use
+		for (Column column : columns) {
+			if (column != null) {
+				column.trim(n);
+			}
+		}
+		if (showDump) {
+			dump(" ** compacting factbase " + this.id + ": " + n + " of " + nextFactID + " facts left");
+		}
+		// start over with empty indexes and re-index the remaining facts
+		createIndexes(fieldNames.length);
+		deleted = new BitSet();
+		liveIDs = new int[Math.max(n, 16)];
+		livePositions = new int[Math.max(n, 16)];
+		liveCount = 0;
+		nextFactID = n;
+		for (int id = 0; id < n; id++) {
+			indexFact(id, factHash(id));
+		}
+		return newIDs;
+	}
+	
+	/** Helper method: appends the given ID to the array of live IDs.
+	 * 
+	 * @param id the ID of a newly asserted fact
+	 */
+	private void addLiveID(int id) {
+		if (liveCount == liveIDs.length) {
+			liveIDs = Arrays.copyOf(liveIDs, liveCount * 2);
+		}
+		if (id >= livePositions.length) {
+			livePositions = Arrays.copyOf(livePositions, Math.max(id + 1, livePositions.length * 2));
+		}
+		liveIDs[liveCount] = id;
+		livePositions[id] = liveCount;
+		liveCount++;
+	}
+	
+	/** Helper method: removes the given ID from the array of live IDs by moving the last live ID into its place.
+	 * 
+	 * @param id the ID of a retracted fact
+	 */
+	private void removeLiveID(int id) {
+		int pos = livePositions[id];
+		int last = liveIDs[--liveCount];
+		liveIDs[pos] = last;
+		livePositions[last] = pos;
 	}
 	
 	
@@ -364,15 +1109,296 @@ public class FactBase implements ExtensionObject {
 	 * @param which index of the field
 	 */
 	private void printIndexedField(int which){
-		LinkedHashMap<Object, List<Integer>> field = this.facts.get(which);
+		if (!showDump) {
+			return;
+		}
+		LinkedHashMap<Object, PostingList> field = this.facts.get(which);
 		dump("Field " + which);
+		if (field == null) {
+			dump("(not indexed)");
+			return;
+		}
 		for (Iterator<Object> i = field.keySet().iterator(); i.hasNext(); ) {
 			Object key = i.next();
-			List<Integer> values = field.get(key);
+			PostingList values = field.get(key);
 			dump(key + " | " + printList(values));
 		}
 	}
 	
+	/** Returns the fact stored under the given ID without any validity checks. Used by the retrieval scans, which
+	 * iterate over the range of valid IDs themselves. The fact is assembled from the columns.
+	 * 
+	 * @param factID the fact's ID (has to be a valid ID, e.g. as returned by {@link #nextLiveID(int)})
+	 * @return the fact associated with the given ID or null if the fact was retracted
+	 */
+	LogoList getFact(int factID) {
+		if (deleted.get(factID)) {
+			return null;
+		}
+		LogoListBuilder fact = new LogoListBuilder();
+		for (Column column : columns) {
+			fact.add(column.get(factID));
+		}
+		return fact.toLogoList();
+	}
+	
+	/** Returns the values of the given fields of the fact with the given ID, without any validity checks. Only the columns of
+	 * these fields are read, and the list is built directly from them (used for output fields, see {@link FactBaseRetrieveTo}).
+	 * 
+	 * @param factID the fact's ID (has to be a valid ID, e.g. as returned by {@link #nextLiveID(int)})
+	 * @param fields the indices of the fields
+	 * @return a list of the field values, in the order of the given fields
+	 */
+	LogoList getFact(int factID, int[] fields) {
+		LogoListBuilder values = new LogoListBuilder();
+		for (int field : fields) {
+			values.add(columns[field].get(factID));
+		}
+		return values.toLogoList();
+	}
+	
+	/** Returns the value of the given field of the fact with the given ID, without any validity checks. Used by the
+	 * retrieval scans to read only the fields they need.
+	 * 
+	 * @param factID the fact's ID (has to be a valid ID, e.g. as returned by {@link #nextLiveID(int)})
+	 * @param field the index of the field
+	 * @return the field value
+	 */
+	Object getValue(int factID, int field) {
+		return columns[field].get(factID);
+	}
+	
+	/** Returns the value of the given field of the fact with the given ID as a number, like {@link #getValue(int, int)} but
+	 * without boxing it. Used by the aggregating scans (e.g. {@link FactBaseSum}).
+	 * 
+	 * @param factID the fact's ID (has to be a valid ID, e.g. as returned by {@link #nextLiveID(int)})
+	 * @param field the index of the field
+	 * @return the field value
+	 * @throws ExtensionException if the value is not a number
+	 */
+	double getNumber(int factID, int field) throws ExtensionException {
+		Column column = columns[field];
+		if (column instanceof DoubleColumn) {
+			return ((DoubleColumn)column).getDouble(factID);
+		}
+		Object value = column.get(factID);
+		if (!(value instanceof Double)) {
+			throw new ExtensionException("the value of field " + fieldNames[field] + " is not a number: " + Dump.logoObject(value));
+		}
+		return (Double)value;
+	}
+	
+	/** Returns the value of the given field of the fact with the given ID as a primitive double, without boxing it. The field
+	 * has to contain nothing but numbers (see {@link #isNumeric(int)}).
+	 * 
+	 * @param factID the fact's ID
+	 * @param field the index of a numeric field
+	 * @return the field value
+	 */
+	double getDouble(int factID, int field) {
+		return ((DoubleColumn)columns[field]).getDouble(factID);
+	}
+	
+	/** Finds the IDs of all facts whose value in the given field is a number within the given bounds. Uses the sorted index of 
+	 * the field if there is one, which takes time proportional to log(n) + the number of matches; otherwise, all facts are scanned.
+	 * 
+	 * @param field the index of the field
+	 * @param low the lower bound (may be {@link Double#NEGATIVE_INFINITY})
+	 * @param lowInclusive whether the lower bound itself is in the range
+	 * @param high the upper bound (may be {@link Double#POSITIVE_INFINITY})
+	 * @param highInclusive whether the upper bound itself is in the range
+	 * @return the matching fact IDs in ascending order
+	 */
+	int[] rangeIDs(int field, double low, boolean lowInclusive, double high, boolean highInclusive) {
+		if (low > high || columns[field] == null) {
+			return new int[0];
+		}
+		int[] ids = new int[16];
+		int count = 0;
+		TreeMap<Double, PostingList> sortedField = sortedFacts.get(field);
+		if (sortedField != null) {
+			NavigableMap<Double, PostingList> range = sortedField.subMap(sortKey(low), lowInclusive, sortKey(high), highInclusive);
+			for (PostingList idList : range.values()) {
+				if (count + idList.size() > ids.length) {
+					ids = Arrays.copyOf(ids, Math.max(ids.length * 2, count + idList.size()));
+				}
+				for (int id = idList.first(); id >= 0; id = idList.next(id)) {
+					ids[count++] = id;
+				}
+			}
+			Arrays.sort(ids, 0, count);
+		}
+		else {
+			Column column = columns[field];
+			for (int id = firstLiveID(); id >= 0; id = nextLiveID(id)) {
+				double value;
+				if (column instanceof DoubleColumn) {
+					value = ((DoubleColumn)column).getDouble(id);
+				}
+				else {
+					Object o = column.get(id);
+					if (!(o instanceof Double)) {
+						continue;
+					}
+					value = (Double)o;
+				}
+				if ((lowInclusive ? value >= low : value > low) && (highInclusive ? value <= high : value < high)) {
+					if (count == ids.length) {
+						ids = Arrays.copyOf(ids, count * 2);
+					}
+					ids[count++] = id;
+				}
+			}
+		}
+		return Arrays.copyOf(ids, count);
+	}
+	
+	/** Retrieves all facts whose value in the given field is a number within the given bounds (see {@link #rangeIDs}). 
+	 * 
+	 * @param field the index of the field
+	 * @param low the lower bound
+	 * @param lowInclusive whether the lower bound itself is in the range
+	 * @param high the upper bound
+	 * @param highInclusive whether the upper bound itself is in the range
+	 * @return a list of the matching facts, in the order they were asserted
+	 */
+	public LogoList retrieveRange(int field, double low, boolean lowInclusive, double high, boolean highInclusive) {
+		return getFacts(rangeIDs(field, low, lowInclusive, high, highInclusive));
+	}
+	
+	/** Finds the IDs of all facts with the given values in the given fields. If there is an index over exactly these fields,
+	 * this is a single hash lookup. Otherwise, the posting lists of all fields with a hash index are intersected (smallest first),
+	 * and the remaining fields are compared against the stored values; without any indexed field, all facts are scanned.
+	 * 
+	 * @param fieldNames the names of the fields
+	 * @param values the values, one for each field
+	 * @return the matching fact IDs in ascending order
+	 * @throws ExtensionException if any of the field names is invalid or the numbers of fields and values differ
+	 */
+	int[] lookupIDs(String[] fieldNames, Object[] values) throws ExtensionException {
+		if (fieldNames.length != values.length) {
+			throw new ExtensionException("expected " + fieldNames.length + " values but got " + values.length);
+		}
+		int[] fields = sortedFieldIndices(fieldNames);
+		// put the values into the same order as the fields
+		Object[] sortedValues = new Object[values.length];
+		for (int i = 0; i < values.length; i++) {
+			sortedValues[Arrays.binarySearch(fields, isAField(fieldNames[i]))] = values[i];
+		}
+		if (columns.length > 0 && columns[0] == null) {
+			// no facts yet
+			return new int[0];
+		}
+		CompositeIndex index = findCompositeIndex(fields);
+		if (index != null) {
+			PostingList idList = index.get(sortedValues);
+			return (idList == null) ? new int[0] : idList.toArray();
+		}
+		// collect the posting lists of all indexed fields
+		List<PostingList> idLists = new ArrayList<PostingList>();
+		for (int i = 0; i < fields.length; i++) {
+			if (hashIndexed[fields[i]]) {
+				PostingList idList = facts.get(fields[i]).get(Column.key(sortedValues[i]));
+				if (idList == null) {
+					return new int[0];
+				}
+				idLists.add(idList);
+			}
+		}
+		int[] ids;
+		if (idLists.isEmpty()) {
+			ids = new int[liveCount];
+			int j = 0;
+			for (int id = firstLiveID(); id >= 0; id = nextLiveID(id)) {
+				ids[j++] = id;
+			}
+		}
+		else {
+			Collections.sort(idLists, new Comparator<PostingList>() {
+				public int compare(PostingList a, PostingList b) {
+					return Integer.compare(a.size(), b.size());
+				}
+			});
+			PostingList candidates = idLists.get(0);
+			for (int i = 1; i < idLists.size(); i++) {
+				candidates = candidates.intersect(idLists.get(i));
+			}
+			ids = candidates.toArray();
+		}
+		// check the fields without an index
+		int count = 0;
+		for (int id : ids) {
+			boolean matches = true;
+			for (int i = 0; i < fields.length && matches; i++) {
+				matches = hashIndexed[fields[i]] || columns[fields[i]].valueEquals(id, sortedValues[i]);
+			}
+			if (matches) {
+				ids[count++] = id;
+			}
+		}
+		return Arrays.copyOf(ids, count);
+	}
+	
+	/** Retrieves all facts with the given values in the given fields (see {@link #lookupIDs}).
+	 * 
+	 * @param fieldNames the names of the fields
+	 * @param values the values, one for each field
+	 * @return a list of the matching facts, in the order they were asserted
+	 * @throws ExtensionException if any of the field names is invalid or the numbers of fields and values differ
+	 */
+	public LogoList lookup(String[] fieldNames, Object[] values) throws ExtensionException {
+		return getFacts(lookupIDs(fieldNames, values));
+	}
+	
+	/** Returns the prepared retrieval for the given condition task and fields, preparing it if it is not in the cache yet.
+	 * 
+	 * @param task the condition task
+	 * @param fields the condition fields
+	 * @param outFields the output fields (or null)
+	 * @return the prepared retrieval
+	 * @throws ExtensionException if the task and fields do not match or a field name is invalid
+	 */
+	PreparedRetrieval prepareRetrieval(AnonymousReporter task, LogoList fields, LogoList outFields) throws ExtensionException {
+		PreparedRetrieval.Key key = new PreparedRetrieval.Key(task.body(), fields, outFields);
+		PreparedRetrieval prepared = preparedRetrievals.get(key);
+		if (prepared == null) {
+			prepared = new PreparedRetrieval(this, task, fields, outFields);
+			preparedRetrievals.put(key, prepared);
+		}
+		return prepared;
+	}
+	
+	/** Returns the facts with the given IDs, without any validity checks.
+	 * 
+	 * @param ids the fact IDs (have to be IDs of facts that have not been retracted)
+	 * @return a list of the facts, in the order of the given IDs
+	 */
+	LogoList getFacts(int[] ids) {
+		return getFacts(ids, null);
+	}
+	
+	/** Returns the values of the given fields of the facts with the given IDs, without any validity checks.
+	 * 
+	 * @param ids the fact IDs (have to be IDs of facts that have not been retracted)
+	 * @param fields the indices of the fields (null for whole facts)
+	 * @return a list of the facts (or their values of the given fields), in the order of the given IDs
+	 */
+	LogoList getFacts(int[] ids, int[] fields) {
+		LogoListBuilder result = new LogoListBuilder();
+		for (int id : ids) {
+			result.add((fields == null) ? getFact(id) : getFact(id, fields));
+		}
+		return result.toLogoList();
+	}
+	
+	/** Returns the indexes over combinations of fields.
+	 * 
+	 * @return the list of composite indexes
+	 */
+	List<CompositeIndex> getCompositeIndexes() {
+		return compositeIndexes;
+	}
+	
 	/** Retrieves the fact with the specified fact ID from this fact base.
 	 * 
 	 * @param factID the fact's ID
@@ -387,30 +1413,11 @@ public class FactBase implements ExtensionObject {
 			throw new ExtensionException ("not a valid fact id: " + factID);
 		}
 		// if factID belongs to a deleted fact, throw an exception
-		if (deleted.contains(factID)) {
+		if (deleted.get(factID)) {
 			throw new ExtensionException ("the fact with id " + factID + " was retracted");
 		}
-		// run through all field hash maps and collect field values associated with factID
-		// ### this might be too costly (in computing time) so might need to be replaced with copy of ordered facts (how costly in memory?)
-		List<Object> fact = new ArrayList<Object>();
-		for (java.util.Iterator<LinkedHashMap<Object, List<Integer>>> i = facts.iterator(); i.hasNext(); ) {
-			LinkedHashMap<Object, List<Integer>> field = i.next();
-			boolean found = false;
-			java.util.Iterator<List<Integer>> j = field.values().iterator();
-			java.util.Iterator<Object> values = field.keySet().iterator();
-			while (!found && j.hasNext()) {
-				List<Integer> idList = j.next();
-				Object fieldValue = values.next();
-				if (idList.contains(factID)) {
-					found = true;
-					fact.add(fieldValue);
-				}
-			}
-			if (!found) {
-				throw new ExtensionException ("could not find (part of) fact with id " + factID);
-			}
-		}
-		return LogoList.fromJava(fact);
+		// facts are stored by ID in the columns, so this is a direct lookup (the field hash maps are only needed for value lookups)
+		return getFact(factID);
 	}
 	
 //	public List<List<Object>> retrieveFacts (String condition, Context context) throws ExtensionException {
@@ -516,16 +1523,10 @@ public class FactBase implements ExtensionObject {
 			buff.append("> ");
 		}
 		buff.append(")\n---------------------------------------------------------");
-		// iterate over ordered facts
-		int factID = 0;
-		for (Iterator<LogoList> ifacts = orderedFacts.iterator(); ifacts.hasNext(); ) {
-			LogoList fact = ifacts.next();
-			// need to skip deleted entries
-			if (fact != null) {
-				buff.append("\n" + factID + ": ");
-				buff.append(printFact(fact));
-			}
-			factID++;
+		// iterate over facts in ID order, skipping deleted entries
+		for (int factID = firstLiveID(); factID >= 0; factID = nextLiveID(factID)) {
+			buff.append("\n" + factID + ": ");
+			buff.append(printFact(getFact(factID)));
 		}
 //		// iterate over ordered facts and calculate fact ids from a counter and the deleted list
 //		int factID = 0; // current fact ID
@@ -600,40 +1601,43 @@ public class FactBase implements ExtensionObject {
 
 	/** Helper method: Returns a string representation of the given list of IDs.
 	 * 
-	 * @param idList the list of fact IDs
+	 * @param idList the posting list of fact IDs
 	 * @return the given list as a String
 	 */
-	private String printList(List<Integer> idList) {
+	private String printList(PostingList idList) {
 		if (idList == null) {
 			return "NULL";
 		}
-		StringBuilder buff = new StringBuilder("( ");
-		for (Object o : idList) {
-			buff.append(o.toString());
-			buff.append(" ");
-		}
-		buff.append(")");
-		return buff.toString();
+		return idList.toString();
 	}
 	
-	/** Computes the intersection of two ID lists.
+	/** Returns an estimate of the heap memory (in bytes) taken up by the posting lists of the field indexes. Hash map entries and
+	 * the field values themselves are not included.
 	 * 
-	 * @param potentials list of potential fact IDs (candidates for inclusion in retrieval result)
-	 * @param idList list of established fact IDs (so far included in retrieval result)
-	 * @return intersection of the two lists, that is a list with all IDs that are contained in both given lists
+	 * @return estimated number of bytes used by the posting lists
 	 */
-	private ArrayList<Integer> intersect(List<Integer> potentials, List<Integer> idList) {
-		ArrayList<Integer> temp = new ArrayList<Integer>();
-		if (idList == null) {
-			return temp;
+	public long indexFootprint() {
+		long bytes = 0;
+		for (LinkedHashMap<Object, PostingList> field : facts) {
+			if (field == null) {
+				continue;
+			}
+			for (PostingList idList : field.values()) {
+				bytes += idList.memoryFootprint();
+			}
 		}
-		for (java.util.Iterator<Integer> i = potentials.iterator(); i.hasNext(); ) {
-			Integer id = i.next();
-			if (idList.contains(id)) {
-				temp.add(id);
+		for (TreeMap<Double, PostingList> field : sortedFacts) {
+			if (field == null) {
+				continue;
 			}
+			for (PostingList idList : field.values()) {
+				bytes += idList.memoryFootprint();
+			}
+		}
+		for (CompositeIndex index : compositeIndexes) {
+			bytes += index.memoryFootprint();
 		}
-		return temp;
+		return bytes;
 	}
 	
 	
@@ -663,13 +1667,9 @@ public class FactBase implements ExtensionObject {
 		base.add(convertToLogoList(fieldNames));
 		// stick facts in 
 //		try {
-			// iterate over ordered facts
-			for (Iterator<LogoList> i = orderedFacts.iterator(); i.hasNext(); ) {
-				LogoList fact = i.next();
-				// need to skip deleted entries
-				if (fact != null) {
-					base.add(fact);
-				}
+			// iterate over facts in ID order, skipping deleted entries
+			for (int factID = firstLiveID(); factID >= 0; factID = nextLiveID(factID)) {
+				base.add(getFact(factID));
 			}
 //			for (int i = 0; i < nextFactID; i++) {
 //				List<Object> fact = retrieveFact(i);
@@ -753,10 +1753,9 @@ public class FactBase implements ExtensionObject {
 		}
 		// check every fact
 		try {
-			// iterate over ordered facts
-			for (Iterator<LogoList> i = orderedFacts.iterator(); i.hasNext(); ) {
-				LogoList fact = i.next();
-				if (fact != null && other.containsFact(fact) < 0) {
+			// iterate over facts in ID order, skipping deleted entries
+			for (int factID = firstLiveID(); factID >= 0; factID = nextLiveID(factID)) {
+				if (other.containsFact(getFact(factID)) < 0) {
 					// fact is not in other factbase
 					return false;
 				}
@@ -946,6 +1945,7 @@ public class FactBase implements ExtensionObject {
 		}
 
 		System.out.println("size of fb: " + fb.size());
+		System.out.println("index footprint of fb: " + fb.indexFootprint() + " bytes");
 		System.out.println("\nTrying to retract a fact that's not there");
 		fact = new ArrayList<Object>();
 		fact.add("Boris"); fact.add(false); fact.add("dog");
@@ -981,7 +1981,7 @@ public class FactBase implements ExtensionObject {
 		Random sample = new Random();
 		while (n > 0) {
 			// pick a random fact
-			int i = sample.nextInt(n);
+			int i = fb.getLiveID(sample.nextInt(n));
 			LogoList randomFact = fb.retrieveFact(i);
 			System.out.println("-- picking fact " + i + ": " + fb.printFact(randomFact));
 			fb.removeFact(randomFact);
@@ -989,8 +1989,351 @@ public class FactBase implements ExtensionObject {
 			n = fb.size();
 		}
 		
+		// unit test posting lists switching between sorted array and bitmap
+		checkPostingLists();
+		// unit test the reference counts of the value dictionary
+		checkDictionary();
+		// unit test lookups of 0 and -0, which are equal in NetLogo
+		checkZeroLookup();
+		// unit test distinct values and their counts, with 0 and -0
+		checkDistinctValues();
+		// unit test joins on keys including 0 and -0
+		checkJoin();
+		// unit test the index of whole facts: deletion within clusters, growing, duplicates after retraction and compaction
+		checkFactHashIndex();
 		
-		
+		// benchmark: heap allocation of the retrieval scan (without running a task) and of fact lookups
+		allocationBenchmark();
+	}
+	
+	/** Helper method for {@link #main(String[])}: generates an error if the given condition does not hold.
+	 * 
+	 * @param condition the condition to be checked
+	 * @param what a description of the check for the error message
+	 */
+	private static void check(boolean condition, String what) {
+		if (!condition) {
+			throw new IllegalStateException("check failed: " + what);
+		}
+	}
+	
+	/** Helper method for {@link #main(String[])}: runs a random sequence of additions and removals on a posting list, first 
+	 * filling it densely (so it switches to a bitmap) and then thinning it out again (so it switches back to a sorted array), 
+	 * and compares it with a sorted set after every step.
+	 * 
+	 */
+	private static void checkPostingLists() {
+		System.out.println("\nPOSTING LISTS");
+		Random random = new Random(7);
+		PostingList list = new PostingList();
+		java.util.TreeSet<Integer> expected = new java.util.TreeSet<Integer>();
+		boolean wasBitmap = false;
+		// phase 0 adds most of the IDs in the range, phase 1 removes most of them
+		for (int phase = 0; phase < 2; phase++) {
+			for (int step = 0; step < 3000; step++) {
+				int id = random.nextInt(500);
+				boolean adding = (phase == 0) ? random.nextInt(10) < 8 : random.nextInt(20) == 0;
+				if (adding) {
+					check(list.add(id) == expected.add(id), "add " + id);
+				}
+				else {
+					check(list.remove(id) == expected.remove(id), "remove " + id);
+				}
+				wasBitmap |= list.isBitmap();
+				check(list.size() == expected.size(), "size after step " + step);
+				check(list.contains(id) == expected.contains(id), "contains " + id);
+			}
+			int k = 0;
+			for (int id = list.first(); id >= 0; id = list.next(id)) {
+				check(id == expected.ceiling(id) && expected.contains(id), "iteration at " + id);
+				check(list.get(k++) == id, "get " + (k - 1));
+			}
+			check(k == expected.size(), "iteration size");
+			System.out.println("phase " + phase + ": " + list.size() + " IDs, bitmap " + list.isBitmap());
+		}
+		check(wasBitmap && !list.isBitmap(), "switched to a bitmap and back");
+		// removing a set of IDs at once in both representations
+		for (boolean dense : new boolean[]{true, false}) {
+			PostingList all = new PostingList();
+			PostingList odd = new PostingList();
+			int n = dense ? 1000 : 40;
+			for (int id = 0; id < n; id++) {
+				all.add(dense ? id : id * 100);
+				if (id % 2 == 1) {
+					odd.add(dense ? id : id * 100);
+				}
+			}
+			check(all.isBitmap() == dense, "representation of " + n + " IDs");
+			check(all.removeAll(odd) == n / 2 && all.size() == n - n / 2, "removeAll");
+			for (int id = all.first(); id >= 0; id = all.next(id)) {
+				check(!odd.contains(id), "removed ID " + id);
+			}
+		}
+		System.out.println("posting lists ok");
+	}
+	
+	/** Helper method for {@link #main(String[])}: checks that the value dictionary counts exactly one reference per live fact
+	 * holding a value, after asserting, retracting, converting a column of numbers into a column of objects and compacting.
+	 * 
+	 * @throws ExtensionException
+	 */
+	private static void checkDictionary() throws ExtensionException {
+		System.out.println("\nVALUE DICTIONARY");
+		ValueDictionary dictionary = FactBaseExtension.dictionary;
+		FactBase fb = new FactBase(new String[]{"status", "value"});
+		for (int i = 0; i < 40; i++) {
+			fb.assertFact(convertToLogoList(new Object[]{"dict-check-" + (i % 4), (double)i}));
+		}
+		for (int i = 0; i < 40; i += 3) {
+			fb.removeFact(convertToLogoList(new Object[]{"dict-check-" + (i % 4), (double)i}));
+		}
+		// the numbers of the retracted facts must not be counted when the column is converted
+		fb.assertFact(convertToLogoList(new Object[]{"dict-check-0", "dict-check-value"}));
+		check(dictionary.references(1.0) == 1 && dictionary.references(0.0) == 0, "references after conversion");
+		for (int round = 0; round < 2; round++) {
+			for (int i = 0; i < 4; i++) {
+				int expected = (i == 0) ? 1 : 0;
+				for (int id = fb.firstLiveID(); id >= 0; id = fb.nextLiveID(id)) {
+					if (fb.getValue(id, 0).equals("dict-check-" + i) && !fb.getValue(id, 1).equals("dict-check-value")) {
+						expected++;
+					}
+				}
+				check(dictionary.references("dict-check-" + i) == expected, "references of value " + i + " in round " + round);
+			}
+			check(dictionary.references(1.0) == 1 && dictionary.references(3.0) == 0, "references of numbers");
+			fb.compact();
+		}
+		while (fb.size() > 0) {
+			fb.removeFact(fb.getFact(fb.firstLiveID()));
+		}
+		fb.compact();
+		check(dictionary.references("dict-check-0") == 0 && dictionary.references(1.0) == 0, "references after retracting all");
+		System.out.println("value dictionary ok");
+	}
+	
+	/** Helper method for {@link #main(String[])}: checks that a lookup of 0 finds the facts storing -0 and vice versa, with a 
+	 * hash index, a composite index and without an index, just like a retrieval comparing with <code>=</code> would.
+	 * 
+	 * @throws ExtensionException
+	 */
+	private static void checkZeroLookup() throws ExtensionException {
+		System.out.println("\nLOOKUP OF ZERO");
+		FactBase fb = new FactBase(new String[]{"indexed", "plain", "pair"});
+		fb.addIndex("indexed", HASH_INDEX);
+		fb.addIndex(new String[]{"indexed", "pair"}, HASH_INDEX);
+		fb.assertFact(convertToLogoList(new Object[]{0.0, 0.0, "a"}));
+		fb.assertFact(convertToLogoList(new Object[]{-0.0, -0.0, "a"}));
+		fb.assertFact(convertToLogoList(new Object[]{-0.0, 1.0, "a"}));
+		fb.assertFact(convertToLogoList(new Object[]{1.0, -0.0, "b"}));
+		check(fb.size() == 3, "a fact with -0 is a duplicate of the fact with 0");
+		for (double zero : new double[]{0.0, -0.0}) {
+			check(fb.lookupIDs(new String[]{"indexed"}, new Object[]{zero}).length == 2, "hash index lookup of " + zero);
+			check(fb.lookupIDs(new String[]{"plain"}, new Object[]{zero}).length == 2, "scan lookup of " + zero);
+			check(fb.lookupIDs(new String[]{"indexed", "pair"}, new Object[]{zero, "a"}).length == 2, "composite lookup of " + zero);
+			check(fb.containsFact(convertToLogoList(new Object[]{zero, zero, "a"})) == 0, "fact lookup of " + zero);
+		}
+		fb.removeFact(convertToLogoList(new Object[]{-0.0, 0.0, "a"}));
+		check(fb.size() == 2 && fb.lookupIDs(new String[]{"indexed"}, new Object[]{0.0}).length == 1, "retraction of -0");
+		System.out.println("lookup of zero ok");
+	}
+	
+	/** Helper method for {@link #main(String[])}: checks that the distinct values of a field and their counts are the same
+	 * whether they are taken from a hash index, a sorted index or the facts themselves, with 0 and -0 counted as one value.
+	 * 
+	 * @throws ExtensionException
+	 */
+	private static void checkDistinctValues() throws ExtensionException {
+		System.out.println("\nDISTINCT VALUES");
+		Object[] values = {0.0, -0.0, 1.0, -0.0, 2.0, 1.0};
+		LogoList expected = convertToLogoList(new Object[]{
+				convertToLogoList(new Object[]{0.0, 3.0}), convertToLogoList(new Object[]{1.0, 2.0}), convertToLogoList(new Object[]{2.0, 1.0})});
+		for (String type : new String[]{null, HASH_INDEX, SORTED_INDEX}) {
+			FactBase fb = new FactBase(new String[]{"value", "n"});
+			if (type != null) {
+				fb.addIndex("value", type);
+			}
+			for (int i = 0; i < values.length; i++) {
+				fb.assertFact(convertToLogoList(new Object[]{values[i], (double)i}));
+			}
+			LogoList counts = fb.distinctValues(0, null, true);
+			check(counts.equals(expected), "counts with index " + type + ": " + counts);
+			int[] ids = fb.lookupIDs(new String[]{"value"}, new Object[]{-0.0});
+			check(fb.distinctValues(0, ids, true).equals(convertToLogoList(new Object[]{expected.get(0)})), "counts of -0 with index " + type);
+		}
+		System.out.println("distinct values ok");
+	}
+	
+	/** Helper method for {@link #main(String[])}: checks that a join finds the same pairs as comparing every pair of facts with
+	 * <code>=</code>, with and without a hash index on either side, for keys including 0, -0 and a string.
+	 * 
+	 * @throws ExtensionException
+	 */
+	private static void checkJoin() throws ExtensionException {
+		System.out.println("\nJOIN");
+		Object[] keys = {0.0, -0.0, 1.0, "a"};
+		for (int indexed = 0; indexed < 4; indexed++) {
+			FactBase left = new FactBase(new String[]{"key", "l"});
+			FactBase right = new FactBase(new String[]{"key", "r"});
+			if ((indexed & 1) != 0) {
+				left.addIndex("key", HASH_INDEX);
+			}
+			if ((indexed & 2) != 0) {
+				right.addIndex("key", HASH_INDEX);
+			}
+			// the right side is larger, so without indexes the left side is looked up
+			for (int i = 0; i < keys.length; i++) {
+				left.assertFact(convertToLogoList(new Object[]{keys[i], (double)i}));
+				right.assertFact(convertToLogoList(new Object[]{keys[i], (double)i}));
+				right.assertFact(convertToLogoList(new Object[]{keys[i], (double)(i + keys.length)}));
+			}
+			List<Object> pairs = new ArrayList<Object>();
+			for (Object pair : join(left, 0, new int[]{1}, right, 0, new int[]{1}).javaIterable()) {
+				pairs.add(pair);
+			}
+			int expected = 0;
+			for (int l = left.firstLiveID(); l >= 0; l = left.nextLiveID(l)) {
+				for (int r = right.firstLiveID(); r >= 0; r = right.nextLiveID(r)) {
+					if (Query.compare(left.getValue(l, 0), Query.EQ, right.getValue(r, 0))) {
+						expected++;
+						LogoList pair = convertToLogoList(new Object[]{left.getValue(l, 1), right.getValue(r, 1)});
+						check(pairs.contains(pair), "pair " + pair + " with indexes " + indexed);
+					}
+				}
+			}
+			// 0 and -0 give 2 x 4 pairs, 1 and "a" give 2 pairs each
+			check(expected == 12 && pairs.size() == expected, "number of pairs with indexes " + indexed + ": " + pairs.size());
+		}
+		System.out.println("join ok");
+	}
+	
+	/** Helper method for {@link #main(String[])}: checks the index of whole facts. Facts are put into one long cluster by giving
+	 * them only a few different hash codes, then removed from the middle, the start and the end of the cluster, checking after 
+	 * every removal that all remaining facts are still found (backward shift deletion must not break a probe sequence). The 
+	 * table grows on the way. Finally, duplicates have to be rejected after retraction and after compaction.
+	 * 
+	 * @throws ExtensionException
+	 */
+	private static void checkFactHashIndex() throws ExtensionException {
+		System.out.println("\nFACT HASH INDEX");
+		FactBase fb = new FactBase(new String[]{"name", "number"});
+		int n = 200;
+		for (int i = 0; i < n; i++) {
+			fb.assertFact(convertToLogoList(new Object[]{"f" + i, (double)i}));
+		}
+		// a separate index over the same facts, with colliding hash codes
+		FactHashIndex index = new FactHashIndex(fb);
+		for (int id = 0; id < n; id++) {
+			index.add(id, id % 3);
+		}
+		Random random = new Random(3);
+		boolean[] removed = new boolean[n];
+		for (int round = 0; round < n; round++) {
+			int victim = (round % 10 == 0) ? round / 10 : random.nextInt(n);
+			index.remove(victim, victim % 3);
+			removed[victim] = true;
+			// a removed fact which is still in the fact base must not be found; all others must be found
+			for (int id = 0; id < n; id++) {
+				int found = index.find(fb.getFact(id), id % 3);
+				check(found == (removed[id] ? -1 : id), "find fact " + id + " after removing " + victim);
+			}
+		}
+		for (int id = 0; id < n; id++) {
+			if (removed[id]) {
+				index.add(id, id % 3);
+			}
+			check(index.find(fb.getFact(id), id % 3) == id, "find fact " + id + " after adding it again");
+		}
+		// duplicates
+		LogoList first = convertToLogoList(new Object[]{"f0", 0.0});
+		check(fb.assertFact(first) == 0 && fb.size() == n, "duplicate rejected");
+		fb.removeFact(first);
+		fb.removeFact(convertToLogoList(new Object[]{"f1", 1.0}));
+		check(fb.containsFact(first) < 0 && fb.size() == n - 2, "retracted fact not found");
+		int again = fb.assertFact(first);
+		check(again == n && fb.assertFact(first) == again && fb.size() == n - 1, "duplicate rejected after retraction");
+		fb.compact();
+		check(fb.containsFact(first) == n - 2 && fb.assertFact(first) == n - 2, "duplicate rejected after compaction");
+		for (int i = 2; i < n; i++) {
+			LogoList fact = convertToLogoList(new Object[]{"f" + i, (double)i});
+			check(fb.containsFact(fact) == i - 2 && fb.assertFact(fact) == i - 2, "fact " + i + " found after compaction");
+		}
+		check(fb.size() == n - 1, "size after compaction");
+		// compaction gives back the memory of the retracted rows
+		long before = fb.columns[1].memoryFootprint();
+		for (int i = 10; i < n; i++) {
+			fb.removeFact(convertToLogoList(new Object[]{"f" + i, (double)i}));
+		}
+		fb.compact();
+		check(fb.size() == 9 && fb.columns[1].memoryFootprint() < before / 4, "columns shrunk by compaction");
+		System.out.println("fact hash index ok");
+	}
+	
+	/** Helper method for {@link #main(String[])}: measures the heap memory allocated per fact by the parts of a retrieval
+	 * scan done by the extension, with tracing switched off, and by looking up facts. A scan for a reporter task reads the 
+	 * condition fields as objects, which boxes every number without a shared box (e.g. timestamps larger than 1023); a scan 
+	 * for the query of retrieve-where or count-where (see {@link Query#matches(int)}) compares the numbers unboxed and should 
+	 * allocate nothing, as should the lookups. Requires a JVM which can measure allocation per thread.
+	 * 
+	 * @throws ExtensionException
+	 */
+	private static void allocationBenchmark() throws ExtensionException {
+		java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			System.out.println("allocation benchmark not supported by this JVM");
+			return;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)bean;
+		long thread = Thread.currentThread().getId();
+		boolean dumping = showDump;
+		showDump = false;
+		FactBase fb = new FactBase(new String[]{"person", "status", "time"});
+		List<LogoList> someFacts = new ArrayList<LogoList>();
+		Random random = new Random(42);
+		for (int i = 0; i < 10000; i++) {
+			LogoList fact = convertToLogoList(new Object[]{"p" + random.nextInt(100), (double)random.nextInt(5), (double)i});
+			fb.assertFact(fact);
+			if (i % 10 == 0) {
+				someFacts.add(fact);
+			}
+		}
+		// the condition reads all fields, including the timestamps
+		int[] fieldIndices = {0, 1, 2};
+		Object[] values = new Object[fieldIndices.length];
+		Query query = new Query(fb);
+		query.add(1, Query.EQ, 2.0);
+		query.add(2, Query.GE, 5000.0);
+		long scanned = 0, found = 0, matched = 0;
+		long[] bytes = new long[3];
+		for (int round = 0; round < 20; round++) {
+			// the first rounds warm up the JIT compiler, only the last one is measured
+			long start = threads.getThreadAllocatedBytes(thread);
+			for (int i = fb.firstLiveID(); i >= 0; i = fb.nextLiveID(i)) {
+				Retrieval.loadValues(fb, i, fieldIndices, values);
+				scanned++;
+			}
+			long afterScan = threads.getThreadAllocatedBytes(thread);
+			for (int i = fb.firstLiveID(); i >= 0; i = fb.nextLiveID(i)) {
+				if (query.matches(i)) {
+					matched++;
+				}
+			}
+			long afterQuery = threads.getThreadAllocatedBytes(thread);
+			for (LogoList fact : someFacts) {
+				if (fb.containsFact(fact) >= 0) {
+					found++;
+				}
+			}
+			long end = threads.getThreadAllocatedBytes(thread);
+			bytes[0] = afterScan - start;
+			bytes[1] = afterQuery - afterScan;
+			bytes[2] = end - afterQuery;
+		}
+		System.out.println("\nALLOCATION BENCHMARK (" + scanned + " facts scanned, " + matched + " facts matched, " + found + " facts looked up)");
+		System.out.println("scan for a task:       " + bytes[0] + " bytes for " + fb.size() + " facts (" 
+				+ (bytes[0] / fb.size()) + " bytes/fact, from boxing the timestamps)");
+		System.out.println("scan for a query:      " + bytes[1] + " bytes for " + fb.size() + " facts");
+		System.out.println("lookup:                " + bytes[2] + " bytes for " + someFacts.size() + " facts");
+		showDump = dumping;
 	}
 	
 	/** Helper method: turns the given object array into an arraylist.
@@ -1006,18 +2349,16 @@ public class FactBase implements ExtensionObject {
 		return theList;
 	}
 
-	/** Helper method: returns a string representation of {@link #orderedFacts}
+	/** Helper method: returns a string representation of all facts in ID order
 	 * 
 	 * @return the list of ordered facts as a String
 	 */
 	private String orderedFactsToString() {
 		StringBuilder buf = new StringBuilder();
-		for (LogoList f : orderedFacts) {
-			// need to skip deleted entries
-			if (f != null) {
-				buf.append(printFact(f));
-				buf.append("\n");
-			}
+		// need to skip deleted entries
+		for (int factID = firstLiveID(); factID >= 0; factID = nextLiveID(factID)) {
+			buf.append(printFact(getFact(factID)));
+			buf.append("\n");
 		}
 		return buf.toString();
 	}
@@ -0,0 +1,78 @@
+/*
+ * FactBaseAddIndex.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Command;
+import org.nlogo.api.Context;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "add-index" primitive for the factbase extension. It adds an index of the given type to 
+ * one field of a fact base and fills it with the facts already stored. Adding an index that already exists does nothing.
+ * There are two index types: "hash" maps field values to the facts containing them, "sorted" keeps the numeric values of the field 
+ * in order and serves range queries (see {@link FactBaseRetrieveRange}). A field can have both.
+ * Given a list of field names instead of a single name, a hash index over this combination of fields is added, which answers
+ * lookups by all of these fields at once (see {@link FactBaseLookup}).
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:add-index <i>fact-base</i> <i>field-name(s)</i> <i>index-type</i></code>
+ * 
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseAddIndex implements Command {
+
+	// expecting a factbase, a field name (or list of field names) and an index type as input
+	/** The add-index primitive expects a fact base, a field name (or list of field names) and an index type as inputs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.StringType() | Syntax.ListType(), Syntax.StringType()});
+	}
+
+	/** Adds the index. First argument {@code args[0]} has to be a fact base, second argument {@code args[1]} the name 
+	 * of one of its fields (or a list of field names), third argument {@code args[2]} the type of index.
+	 * 
+	 *  @param args the arguments to this call of add-index
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof FactBase)) {
+	        throw new ExtensionException ("not a factbase: " + Dump.logoObject(arg0));			
+		}
+		FactBase fb = (FactBase)arg0;
+		fb.addIndex(FactBase.toFieldNames(args[1].get()), args[2].getString());
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * FactBaseCompact.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.LogoListBuilder;
+import org.nlogo.api.Reporter;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "compact" primitive for the factbase extension. Compact reclaims the space of all retracted
+ * facts and rebuilds the indexes of the given fact base. The remaining facts keep their order but are renumbered, so any
+ * fact IDs obtained earlier (e.g. from r-assert) become invalid. Compact therefore reports how the IDs have changed:
+ * a list of pairs <code>[old-id new-id]</code>, one for every fact whose ID is different now.
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:compact <i>fact-base</i></code>
+ * 
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseCompact implements Reporter {
+
+	// expecting a factbase as input, returning a list of [old-id new-id] pairs
+	/** The compact primitive expects a fact base as input and returns a list of pairs of fact IDs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType()}, Syntax.ListType());
+	}
+	
+	/** Performs the compaction. The first argument {@code args[0]} has to be a fact base. Returns a list of
+	 * <code>[old-id new-id]</code> pairs for all facts that have been renumbered.
+	 * 
+	 *  @param args the arguments to this call of compact
+	 *  @param context the NetLogo context
+	 *  @return the list of renumbered fact IDs
+	 *  @throws ExtensionException if the argument is not a fact base
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof FactBase)) {
+	        throw new ExtensionException ("not a factbase: " + Dump.logoObject(arg0));			
+		}
+		FactBase fb = (FactBase)arg0;
+		if (fb.isIterating()) {
+			throw new ExtensionException("cannot compact a factbase while iterating over its facts with factbase:foreach");
+		}
+		int[] newIDs = fb.compact();
+		LogoListBuilder remapped = new LogoListBuilder();
+		for (int oldID = 0; oldID < newIDs.length; oldID++) {
+			if (newIDs[oldID] >= 0 && newIDs[oldID] != oldID) {
+				LogoListBuilder pair = new LogoListBuilder();
+				pair.add((double) oldID);
+				pair.add((double) newIDs[oldID]);
+				remapped.add(pair.toLogoList());
+			}
+		}
+		return remapped.toLogoList();
+	}	
+
+}
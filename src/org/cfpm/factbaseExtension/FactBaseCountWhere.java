@@ -0,0 +1,77 @@
+/*
+ * FactBaseCountWhere.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.Reporter;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "count-where" primitive for the factbase extension. It reports the number of facts satisfying
+ * a condition given as a list of clauses, as for retrieve-where (see {@link FactBaseRetrieveWhere}). If all clauses are
+ * equalities answered by one index, the number is the size of the corresponding posting list and no fact is looked at.
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:count-where <i>fact-base</i> <i>clause-list</i></code>
+ *
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseCountWhere implements Reporter {
+	
+	// expects a reference to the factbase and a list of clauses, returns a number
+	/** The count-where primitive expects a fact base and a list of clauses as inputs and returns a number. 
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.ListType()}, Syntax.NumberType());
+	}
+	
+	/** Counts the facts satisfying all given clauses. The first argument {@code args[0]} has to be a fact base, the second
+	 * argument {@code args[1]} a list of clauses.
+	 * 
+	 * @param args the arguments to this call of count-where
+	 * @param context the NetLogo context
+	 * @return the number of matching facts
+	 * @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof FactBase)) {
+	        throw new ExtensionException ("not a factbase: " + Dump.logoObject(arg0));			
+		}
+		FactBase fb = (FactBase)arg0;
+		Query query = Query.parse(fb, args[1].getList());
+		return (double) query.count();
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * FactBaseCreateIndexed.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.Reporter;
+import org.nlogo.core.LogoList;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "create-indexed" primitive for the factbase extension. Like "create" (see {@link FactBaseCreate}),
+ * it creates a new fact base of the specified structure and returns it, but only the fields given in the second list get an index.
+ * Fields without an index make asserting and retracting facts cheaper; use them for values that are never looked up, e.g. notes
+ * or time stamps. Duplicate facts are detected regardless of which fields are indexed. 
+ * 
+ * An entry of the list of indexed fields is either a field name, which gets a hash index, or a pair of field name and index type
+ * (see {@link FactBaseAddIndex}), e.g. <code>["t" "sorted"]</code>.
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:create-indexed <i>list-of-field-names</i> <i>list-of-indexed-field-names</i></code>
+ *
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseCreateIndexed implements Reporter {
+	
+	// expects two lists, returns a reference to the newly created factbase
+	/** The create-indexed primitive expects a list of field names and a list of indexed field names as inputs and returns a fact base.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.ListType(), Syntax.ListType()}, Syntax.WildcardType());
+	}
+
+	/** Performs the creation of a new fact base and reports it. The first argument {@code args[0]} has
+	 * to contain the list of field names, the second argument {@code args[1]} the names of the fields to be indexed.
+	 * 
+	 * @param args the arguments to this call of create-indexed
+	 * @param context the NetLogo context
+	 * @return a reference to the newly created fact base
+	 * @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		LogoList list = args[0].getList();
+		LogoList indexList = args[1].getList();
+		if (list.isEmpty()) {
+			throw new ExtensionException ("no field names given");
+		}
+		String[] fieldNames = new String[list.size()];
+		for (int i = 0; i < fieldNames.length; i++) {
+			fieldNames[i] = list.get(i).toString();
+		}
+		boolean[] indexed = new boolean[fieldNames.length];
+		List<LogoList> typedIndexes = new ArrayList<LogoList>();
+		for (Object entry : indexList.javaIterable()) {
+			if (entry instanceof LogoList) {
+				LogoList pair = (LogoList)entry;
+				if (pair.size() != 2) {
+					throw new ExtensionException ("not a pair of field name and index type: " + Dump.logoObject(pair));
+				}
+				typedIndexes.add(pair);
+				continue;
+			}
+			int i = Arrays.asList(fieldNames).indexOf(entry.toString());
+			if (i < 0) {
+				throw new ExtensionException (entry + " is not defined as a field in " + list);
+			}
+			indexed[i] = true;
+		}
+		FactBase fb = new FactBase(fieldNames, indexed);
+		for (LogoList pair : typedIndexes) {
+			fb.addIndex(pair.get(0).toString(), pair.get(1).toString());
+		}
+		return fb;
+	}
+
+}
@@ -0,0 +1,74 @@
+/*
+ * FactBaseCursor.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.Reporter;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "cursor" primitive for the factbase extension. It creates a cursor over the facts satisfying the
+ * given condition (see {@link Cursor}), which delivers them page by page with <code>factbase:next-page</code> 
+ * (see {@link FactBaseNextPage}). As for retrieve-to, a list of output fields can be given.
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:cursor <i>fact-base</i> <i>condition-task</i> <i>condition-field-list</i></code> 
+ * or <code>(factbase:cursor <i>fact-base</i> <i>condition-task</i> <i>condition-field-list</i> <i>output-field-list</i>)</code>
+ *
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseCursor implements Reporter {
+	
+	// expects a reference to the factbase, a condition (as ReporterTask and List of field names) and optionally a list of output fields, returns a cursor
+	/** The cursor primitive expects a fact base, a condition (specified as a reporter task and a list of corresponding fields) and 
+	 * optionally a list of output fields as inputs and returns a cursor. 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.ReporterType(), Syntax.ListType(), Syntax.ListType() | Syntax.RepeatableType()}, Syntax.WildcardType(), 3);
+	}
+	
+	/** Returns a cursor over the facts satisfying the given condition in the specified fact base. The first argument {@code args[0]} 
+	 * has to be a fact base, the second argument {@code args[1]} has to be a reporter task and the third argument has to be a list of
+	 * field names corresponding to the formal arguments used in the task. The optional fourth argument is a list of output fields.
+	 * 
+	 * @param args the arguments to this call of cursor
+	 * @param context the NetLogo context
+	 * @return a cursor positioned before the first matching fact
+	 * @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException 
+	{
+		// the retrieval checks the arguments and keeps the position
+		return new Cursor(new Retrieval(args, context));
+	}
+	
+}
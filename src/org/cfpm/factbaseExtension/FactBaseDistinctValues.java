@@ -0,0 +1,106 @@
+/*
+ * FactBaseDistinctValues.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.Reporter;
+import org.nlogo.core.LogoList;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "distinct-values" primitive for the factbase extension. It reports the list of distinct values
+ * of the given field, e.g. all locations mentioned in the fact base. If the field is indexed, the values are taken straight 
+ * from the index without looking at any fact (see {@link FactBase#distinctValues(int, int[], boolean)}). Optionally, a condition 
+ * can be given: then only the facts satisfying it are considered, which requires retrieving them first.
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:distinct-values <i>fact-base</i> <i>field-name</i></code> 
+ * or <code>(factbase:distinct-values <i>fact-base</i> <i>field-name</i> <i>condition-task</i> <i>condition-field-list</i>)</code>
+ *
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseDistinctValues implements Reporter {
+	
+	// expects a reference to the factbase, a field name and optionally a condition (as ReporterTask and List of field names), returns a list
+	/** The distinct-values primitive expects a fact base, a field name and optionally a condition (specified as a reporter task 
+	 * and a list of corresponding fields) as inputs and returns a list of values. 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.StringType(), Syntax.ReporterType() | Syntax.ListType() | Syntax.RepeatableType()}, Syntax.ListType(), 2);
+	}
+	
+	/** Returns the distinct values of the given field in the specified fact base. The first argument {@code args[0]} has to
+	 * be a fact base and the second argument {@code args[1]} a field name. The optional third and fourth arguments have to be
+	 * a reporter task and a list of field names corresponding to the formal arguments used in the task.
+	 * 
+	 * @param args the arguments to this call of distinct-values
+	 * @param context the NetLogo context
+	 * @return a list of the distinct values (may be empty)
+	 * @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException 
+	{
+		return distinctValues(args, context, false);
+	}
+	
+	/** Helper method for distinct-values and group-count (see {@link FactBaseGroupCount}): checks the arguments and reports the
+	 * distinct values of the given field, with or without their counts, either over all facts or over the facts satisfying 
+	 * the optional condition.
+	 * 
+	 * @param args the arguments to the primitive
+	 * @param context the NetLogo context
+	 * @param withCounts whether to report [value count] pairs instead of the values alone
+	 * @return a list of values or [value count] pairs
+	 * @throws ExtensionException if any of the arguments are invalid
+	 * @throws LogoException
+	 */
+	static LogoList distinctValues(Argument[] args, Context context, boolean withCounts) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof FactBase)) {
+	        throw new ExtensionException ("not a factbase: " + Dump.logoObject(arg0));
+		}
+		FactBase fb = (FactBase)arg0;
+		int field = fb.requireFieldIndex(args[1].getString());
+		if (args.length == 2) {
+			// no condition: the index can answer this, if there is one
+			return fb.distinctValues(field, null, withCounts);
+		}
+		if (args.length != 4) {
+			throw new ExtensionException("a condition needs a reporter task and a list of fields");
+		}
+		// with a condition: find the matching facts first
+		Retrieval retrieval = new Retrieval(new Argument[]{args[0], args[2], args[3]}, context);
+		return fb.distinctValues(field, retrieval.retrieveIDs(), withCounts);
+	}
+	
+}
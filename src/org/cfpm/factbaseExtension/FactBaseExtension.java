@@ -52,8 +52,10 @@ public class FactBaseExtension extends DefaultClassManager {
 	// keep track of all instantiated factbases
 	/** Counter for the next available ID for a new factbase */
 	static protected int next = 0;
-	/** A hash table of all instantiated factbases */
-	static WeakHashMap<Integer, FactBase> bases = new WeakHashMap<>();
+	/** A hash table of all instantiated factbases (weakly referenced, so factbases no longer used by the model can be garbage collected) */
+	static WeakHashMap<FactBase, Integer> bases = new WeakHashMap<>();
+	/** The dictionary encoding the (non-numeric) field values of all factbases */
+	static ValueDictionary dictionary = new ValueDictionary();
 	
 	/** Flag to toggle output to NetLogo (if set to true, output will take place, if set to false, output will be ignored). 
 	 * In any deployed version of the extension the flag is set to false.
@@ -89,9 +91,44 @@ public class FactBaseExtension extends DefaultClassManager {
 		primManager.addPrimitive("one-of", new FactBaseOneOf());
 		primManager.addPrimitive("n-of", new FactBaseNOf());
 		primManager.addPrimitive("r-assert", new FactBaseRAssert());
-		//primManager.addPrimitive("min-one-of", new FactBaseMinOneOf());
+		primManager.addPrimitive("compact", new FactBaseCompact());
+		primManager.addPrimitive("set-auto-compact", new FactBaseSetAutoCompact());
+		primManager.addPrimitive("create-indexed", new FactBaseCreateIndexed());
+		primManager.addPrimitive("add-index", new FactBaseAddIndex());
+		primManager.addPrimitive("remove-index", new FactBaseRemoveIndex());
+		primManager.addPrimitive("retrieve-range", new FactBaseRetrieveRange());
+		primManager.addPrimitive("retrieve-less-than", new FactBaseRetrieveLessThan());
+		primManager.addPrimitive("retrieve-greater-than", new FactBaseRetrieveGreaterThan());
+		primManager.addPrimitive("lookup", new FactBaseLookup());
+		primManager.addPrimitive("retrieve-where", new FactBaseRetrieveWhere());
+		primManager.addPrimitive("count", new FactBaseCount());
+		primManager.addPrimitive("count-where", new FactBaseCountWhere());
+		primManager.addPrimitive("foreach", new FactBaseForeach());
+		primManager.addPrimitive("stop-foreach", new FactBaseStopForeach());
+		primManager.addPrimitive("min-one-of", new FactBaseMinOneOf());
+		primManager.addPrimitive("max-one-of", new FactBaseMaxOneOf());
+		primManager.addPrimitive("min", new FactBaseMin());
+		primManager.addPrimitive("max", new FactBaseMax());
+		primManager.addPrimitive("sum", new FactBaseSum());
+		primManager.addPrimitive("mean", new FactBaseMean());
+		primManager.addPrimitive("retrieve-sorted", new FactBaseRetrieveSorted());
+		primManager.addPrimitive("retrieve-top", new FactBaseRetrieveTop());
+		primManager.addPrimitive("join", new FactBaseJoin());
+		primManager.addPrimitive("cursor", new FactBaseCursor());
+		primManager.addPrimitive("next-page", new FactBaseNextPage());
+		primManager.addPrimitive("distinct-values", new FactBaseDistinctValues());
+		primManager.addPrimitive("group-count", new FactBaseGroupCount());
 	}
 
+	/** Checks if writing to the NetLogo command center is switched on. Callers building expensive messages should check 
+	 * this first, so that no strings are built when tracing is off.
+	 * 
+	 * @return the value of {@link #outputToNetlogo}
+	 */
+	static boolean isTracing() {
+		return outputToNetlogo;
+	}
+	
 	/** Writes the given text to the NetLogo command center if the internal flag {@link #outputToNetlogo} is set to true.
 	 * This method is solely intended for debugging purposes while developing the extension. 
 	 * 
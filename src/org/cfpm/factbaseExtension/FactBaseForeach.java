@@ -0,0 +1,121 @@
+/*
+ * FactBaseForeach.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import java.util.ArrayList;
+
+import org.nlogo.api.AnonymousCommand;
+import org.nlogo.api.Argument;
+import org.nlogo.api.Command;
+import org.nlogo.api.Context;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "foreach" primitive for the factbase extension. Foreach runs a command task for every fact
+ * satisfying the given condition, as soon as the fact is found, instead of collecting all matching facts in a list first.
+ * The command task gets the values of the given output fields as its arguments or, if the list of output fields is empty, 
+ * the whole fact, e.g.
+ * <code>factbase:foreach fb [ [p t] -&gt; p = self and t &lt; ticks ] ["person" "time"] ["what"] [ [w] -&gt; show w ]</code>.
+ * 
+ * The command task may assert or retract facts; facts asserted meanwhile are not visited. It can end the iteration early
+ * with <code>factbase:stop-foreach</code> (see {@link FactBaseStopForeach}).
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:foreach <i>fact-base</i> <i>condition-task</i> <i>condition-field-list</i> <i>output-field-list</i> <i>command-task</i></code>
+ * 
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseForeach implements Command {
+
+	/** The iterations in progress, innermost last. Kept per thread: each workspace runs its NetLogo code in its own thread, 
+	 * so parallel runs of a BehaviorSpace experiment (which share the static state of the extension) cannot stop each other's
+	 * iterations. */
+	private static final ThreadLocal<ArrayList<Retrieval>> running = new ThreadLocal<ArrayList<Retrieval>>() {
+		@Override
+		protected ArrayList<Retrieval> initialValue() {
+			return new ArrayList<Retrieval>();
+		}
+	};
+	
+	// expects a reference to the factbase, a condition (as ReporterTask and List of field names), a list of output fields and a CommandTask
+	/** The foreach primitive expects a fact base, a condition (specified as a reporter task and a list of corresponding fields), 
+	 * a list of output fields and a command task as inputs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.ReporterType(), Syntax.ListType(), Syntax.ListType(), Syntax.CommandType()});
+	}
+
+	/** Runs the command task for every fact satisfying the given condition in the specified fact base. The first argument 
+	 * {@code args[0]} has to be a fact base, the second argument {@code args[1]} has to be a reporter task, the third argument
+	 * has to be a list of field names corresponding to the formal arguments used in the task, the fourth argument a list of
+	 * field names specifying the arguments of the command task (or an empty list for the whole fact), and the fifth argument
+	 * has to be a command task.
+	 * 
+	 * @param args the arguments to this call of foreach
+	 * @param context the NetLogo context
+	 * @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg4 = args[4].get();
+		if (! (arg4 instanceof AnonymousCommand)) {
+			throw new ExtensionException ("not a command task: " + Dump.logoObject(arg4));
+		}
+		// an empty list of output fields means the whole fact
+		Argument[] retrievalArgs = args;
+		if (args[3].getList().isEmpty()) {
+			retrievalArgs = new Argument[]{args[0], args[1], args[2]};
+		}
+		Retrieval retrieval = new Retrieval(retrievalArgs, context);
+		ArrayList<Retrieval> iterations = running.get();
+		iterations.add(retrieval);
+		try {
+			retrieval.forEach((AnonymousCommand)arg4);
+		}
+		finally {
+			iterations.remove(iterations.size() - 1);
+		}
+	}
+	
+	/** Stops the innermost iteration in progress in the current thread after the current fact.
+	 * 
+	 * @throws ExtensionException if no iteration is in progress
+	 */
+	static void stopInnermost() throws ExtensionException {
+		ArrayList<Retrieval> iterations = running.get();
+		if (iterations.isEmpty()) {
+			throw new ExtensionException("stop-foreach can only be used inside factbase:foreach");
+		}
+		iterations.get(iterations.size() - 1).stop();
+	}
+
+}
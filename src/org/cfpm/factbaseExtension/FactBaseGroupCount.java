@@ -0,0 +1,74 @@
+/*
+ * FactBaseGroupCount.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.Reporter;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "group-count" primitive for the factbase extension. It reports a list <code>[value count]</code>
+ * for every distinct value of the given field, e.g. the number of facts per status. If the field is indexed, the counts are
+ * the sizes of the index entries, so no fact is looked at. As for distinct-values (see {@link FactBaseDistinctValues}), a 
+ * condition can be given to count only the facts satisfying it.
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:group-count <i>fact-base</i> <i>field-name</i></code> 
+ * or <code>(factbase:group-count <i>fact-base</i> <i>field-name</i> <i>condition-task</i> <i>condition-field-list</i>)</code>
+ *
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseGroupCount implements Reporter {
+	
+	// expects a reference to the factbase, a field name and optionally a condition (as ReporterTask and List of field names), returns a list of lists
+	/** The group-count primitive expects a fact base, a field name and optionally a condition (specified as a reporter task 
+	 * and a list of corresponding fields) as inputs and returns a list of [value count] pairs. 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.StringType(), Syntax.ReporterType() | Syntax.ListType() | Syntax.RepeatableType()}, Syntax.ListType(), 2);
+	}
+	
+	/** Returns the number of facts for each distinct value of the given field in the specified fact base. The first argument 
+	 * {@code args[0]} has to be a fact base and the second argument {@code args[1]} a field name. The optional third and fourth 
+	 * arguments have to be a reporter task and a list of field names corresponding to the formal arguments used in the task.
+	 * 
+	 * @param args the arguments to this call of group-count
+	 * @param context the NetLogo context
+	 * @return a list of [value count] pairs (may be empty)
+	 * @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException 
+	{
+		return FactBaseDistinctValues.distinctValues(args, context, true);
+	}
+	
+}
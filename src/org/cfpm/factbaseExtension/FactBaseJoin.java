@@ -0,0 +1,120 @@
+/*
+ * FactBaseJoin.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.Reporter;
+import org.nlogo.core.LogoList;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "join" primitive for the factbase extension. Join combines the facts of two fact bases which have
+ * equal values in a given field of each, e.g. beliefs and plans about the same agent: 
+ * <code>factbase:join beliefs plans ["about" "agent"] [["what"] ["action" "time"]]</code> reports a list 
+ * <code>[what action time]</code> for every pair of a belief and a plan whose "about" and "agent" values are equal. An empty
+ * list of output fields stands for all fields of that fact base.
+ * 
+ * Instead of running a retrieval for every fact of one fact base, the values are looked up in a hash index of the other one
+ * (see {@link FactBase#join}), so no reporter task is run at all.
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:join <i>fact-base-1</i> <i>fact-base-2</i> <i>join-field-list</i> <i>output-field-lists</i></code>
+ *
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseJoin implements Reporter {
+	
+	// expects references to two factbases, a list of two field names and a list of two lists of field names, returns a list of lists
+	/** The join primitive expects two fact bases, a list of two field names and a list of two lists of output field names as inputs
+	 * and returns a list of lists of values. 
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.WildcardType(), Syntax.ListType(), Syntax.ListType()}, Syntax.ListType());
+	}
+	
+	/** Returns the output values of all pairs of facts with equal values in the join fields. The first and second arguments 
+	 * {@code args[0]} and {@code args[1]} have to be fact bases, the third argument {@code args[2]} a list of two field names
+	 * (one of each fact base) and the fourth argument {@code args[3]} a list of two lists of field names (the output fields of
+	 * each fact base).
+	 * 
+	 * @param args the arguments to this call of join
+	 * @param context the NetLogo context
+	 * @return a list of the output values for each pair of matching facts (may be empty)
+	 * @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		FactBase left = toFactBase(args[0].get());
+		FactBase right = toFactBase(args[1].get());
+		LogoList joinFields = args[2].getList();
+		if (joinFields.size() != 2) {
+			throw new ExtensionException("join needs exactly two join fields, one of each factbase: " + Dump.logoObject(joinFields));
+		}
+		LogoList outFields = args[3].getList();
+		if (outFields.size() != 2 || !(outFields.get(0) instanceof LogoList) || !(outFields.get(1) instanceof LogoList)) {
+			throw new ExtensionException("join needs two lists of output fields, one for each factbase: " + Dump.logoObject(outFields));
+		}
+		return FactBase.join(left, left.requireFieldIndex(joinFields.get(0).toString()), getFieldIndices(left, (LogoList)outFields.get(0)),
+				right, right.requireFieldIndex(joinFields.get(1).toString()), getFieldIndices(right, (LogoList)outFields.get(1)));
+	}
+	
+	/** Helper method: checks that the given argument is a fact base.
+	 * 
+	 * @param arg an argument
+	 * @return the argument as a fact base
+	 * @throws ExtensionException if the argument is not a fact base
+	 */
+	private static FactBase toFactBase(Object arg) throws ExtensionException {
+		if (! (arg instanceof FactBase)) {
+	        throw new ExtensionException ("not a factbase: " + Dump.logoObject(arg));			
+		}
+		return (FactBase)arg;
+	}
+	
+	/** Helper method: converts the given list of output field names into field indices. An empty list stands for all fields.
+	 * 
+	 * @param fb the fact base
+	 * @param names the list of field names
+	 * @return the field indices
+	 * @throws ExtensionException if any of the names is not a field of the fact base
+	 */
+	private static int[] getFieldIndices(FactBase fb, LogoList names) throws ExtensionException {
+		int n = names.isEmpty() ? fb.getFieldNames().length : names.size();
+		int[] indices = new int[n];
+		for (int i = 0; i < n; i++) {
+			indices[i] = names.isEmpty() ? i : fb.requireFieldIndex(names.get(i).toString());
+		}
+		return indices;
+	}
+
+}
@@ -0,0 +1,85 @@
+/*
+ * FactBaseLookup.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.Reporter;
+import org.nlogo.core.LogoList;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "lookup" primitive for the factbase extension. It retrieves all facts which have the given values
+ * in the given fields, e.g. <code>factbase:lookup fb ["person" "status"] (list self 2)</code>. This is the same as a retrieve with
+ * the condition <code>[[p s] -> p = self and s = 2]</code> (in particular, 0 and -0 are equal), but no reporter task is run: with an index over exactly these fields 
+ * (see {@link FactBaseAddIndex}) the facts are found with a single hash lookup, otherwise the indexes of the single fields are used
+ * as far as they exist. The facts are reported in the order they were asserted.
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:lookup <i>fact-base</i> <i>field-list</i> <i>value-list</i></code>
+ *
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseLookup implements Reporter {
+	
+	// expects a reference to the factbase, a list of field names and a list of values, returns a list of facts
+	/** The lookup primitive expects a fact base, a list of field names and a list of values as inputs and returns a list of facts. 
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.ListType(), Syntax.ListType()}, Syntax.ListType());
+	}
+	
+	/** Returns all facts with the given values in the given fields. The first argument {@code args[0]} has to be a fact base, 
+	 * the second argument {@code args[1]} a list of field names and the third argument {@code args[2]} a list of values, one for
+	 * each field.
+	 * 
+	 * @param args the arguments to this call of lookup
+	 * @param context the NetLogo context
+	 * @return a list of all matching facts (may be empty)
+	 * @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof FactBase)) {
+	        throw new ExtensionException ("not a factbase: " + Dump.logoObject(arg0));			
+		}
+		FactBase fb = (FactBase)arg0;
+		LogoList list = args[2].getList();
+		Object[] values = new Object[list.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = list.get(i);
+		}
+		return fb.lookup(FactBase.toFieldNames(args[1].getList()), values);
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * FactBaseMean.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.Reporter;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "mean" primitive for the factbase extension. Mean reports the mean of the values in the
+ * given field of all facts satisfying the specified condition. It generates an error if no fact satisfies the condition.
+ * The values are read while checking the facts, so no list of the matching facts is built; it is an error if the field
+ * of a matching fact does not hold a number.
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:mean <i>fact-base</i> <i>condition-task</i> <i>condition-field-list</i> <i>field-name</i></code>
+ *
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseMean implements Reporter {
+
+	// expects a reference to the factbase, a condition (as ReporterTask and List of field names) and a field name, returns a number
+	/** The mean primitive expects a fact base, a condition (specified as a reporter task and a list of corresponding fields) 
+	 * and a field name as inputs and returns a number.
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.ReporterType(), Syntax.ListType(), Syntax.StringType()}, Syntax.NumberType());
+	}
+	
+	/** Returns the mean of the values in the given field of the facts satisfying the given condition in the specified fact
+	 * base. The first argument {@code args[0]} has to be a fact base, the second argument {@code args[1]} has to be a
+	 * reporter task, the third argument has to be a list of field names corresponding to the formal arguments used in the
+	 * task, and the fourth argument has to be a field name.
+	 * 
+	 * @param args the arguments to this call of mean
+	 * @param context the NetLogo context
+	 * @return the mean of the values in the given field
+	 * @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException 
+	{
+		// all the work is done in the retrieval class
+		Retrieval retrieval = new Retrieval(args, context);
+		FactBase fb = retrieval.getFactBase();
+		int field = fb.requireFieldIndex(args[3].getString());
+		double sum = retrieval.sum(field);
+		if (retrieval.getMatchCount() == 0) {
+			throw new ExtensionException("there are no facts satisfying the given condition");
+		}
+		return sum / retrieval.getMatchCount();
+	}
+
+}
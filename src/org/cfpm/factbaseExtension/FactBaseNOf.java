@@ -30,14 +30,11 @@ import org.nlogo.api.Argument;
 import org.nlogo.api.Context;
 import org.nlogo.api.ExtensionException;
 import org.nlogo.api.LogoException;
-import org.nlogo.api.LogoListBuilder;
 import org.nlogo.api.Reporter;
 import org.nlogo.core.LogoList;
 import org.nlogo.core.Syntax;
 import org.nlogo.core.SyntaxJ;
 
-import java.util.ArrayList;
-
 /** This class implements the "n-of" primitive for the factbase extension. N-of retrieves n
  * random facts satisfying the specified condition from the given fact base. It is an error
  * if n is greater than the number of such facts.
@@ -76,50 +73,14 @@ public class FactBaseNOf implements Reporter {
 		// determine parameter n from args (args[0] = factbase, args[1] = reporter task. args[2] = list of field names, args[3] = n
 		int n = args[3].getIntValue();
 		// all the work is done in the retrieval class
-		// easy way to determine n-of: retrieve ALL facts that satisfy the condition, then pick n random ones
+		// the facts are picked while checking the facts in a single pass, without collecting all facts that satisfy the condition
 		Retrieval r = new Retrieval(args, context);
-		LogoList result = r.retrieveAll();
-		// check if there are at least n facts in the result
-		if (result.isEmpty() || result.size() < n) {
-			throw new ExtensionException("cannot pick " + n + " facts from " + result.size() + " facts satisfying the condition; the given number n = " + n + " is too large");
-		}
-		// now pick n random facts from result without repeats
-		// -- done as picking (and removing) from list of indices since removing from a LogoList gives an UnsupportedOperationException
-		ArrayList<Integer> possible = new ArrayList<>();
-		ArrayList<Integer> chosen = new ArrayList<>();
-		for (int i = 0; i < result.size(); i++) {
-			possible.add(i);
-		}
-		FactBaseExtension.writeToNetLogo("possible = " + printArrayList(possible), false, context);
-		for (int i = 0; i < n; i++) {
-			int index = FactBaseExtension.rng.nextInt(possible.size());
-			chosen.add(possible.get(index));
-			possible.remove(index);
-			FactBaseExtension.writeToNetLogo("element " + i + ": " + index, false, context);
-			FactBaseExtension.writeToNetLogo("chosen = " + printArrayList(chosen), false, context);
-			FactBaseExtension.writeToNetLogo("possible = " + printArrayList(possible), false, context);
+		LogoList picked = r.retrieveN(n);
+		// check if there are at least n facts satisfying the condition
+		if (picked == null || r.getMatchCount() == 0) {
+			throw new ExtensionException("cannot pick " + n + " facts from " + r.getMatchCount() + " facts satisfying the condition; the given number n = " + n + " is too large");
 		}
-		LogoListBuilder picked = new LogoListBuilder();
-		for (Integer integer : chosen) {
-			picked.add(result.get(integer));
-		}
-		return picked.toLogoList();
+		return picked;
 	}
 
-	/** Helper method: returns a string representation of the given array list of integers.
-	 * 
-	 * @param nums an array list of integers
-	 * @return the array list as a string
-	 */
-	private String printArrayList(ArrayList<Integer> nums) {
-		StringBuilder buff = new StringBuilder("[");
-		for (Object i : nums) {
-			buff.append(" ");
-			buff.append(i);
-		}
-		buff.append(" ]");
-		return buff.toString();
-	}
-	
-	
 }
@@ -0,0 +1,76 @@
+/*
+ * FactBaseNextPage.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.Reporter;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "next-page" primitive for the factbase extension. It reports the next k facts of a cursor created
+ * with <code>factbase:cursor</code> (see {@link FactBaseCursor}) and moves the cursor on. Once all facts have been delivered,
+ * it reports an empty list.
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:next-page <i>cursor</i> <i>k</i></code>
+ *
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseNextPage implements Reporter {
+	
+	// expects a cursor and a number k, returns a list of facts
+	/** The next-page primitive expects a cursor and an integer number (number of facts wanted) as inputs and returns a list of facts. 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.NumberType()}, Syntax.ListType());
+	}
+	
+	/** Returns the next facts of the given cursor. The first argument {@code args[0]} has to be a cursor, the second argument
+	 * {@code args[1]} an integer number.
+	 * 
+	 * @param args the arguments to this call of next-page
+	 * @param context the NetLogo context
+	 * @return a list of up to k facts (empty if there are no more)
+	 * @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException 
+	{
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof Cursor)) {
+	        throw new ExtensionException ("not a cursor: " + Dump.logoObject(arg0));
+		}
+		int k = Retrieval.optionalCount(args, 1, 0, "page size");
+		return ((Cursor)arg0).nextPage(k, context);
+	}
+	
+}
@@ -70,13 +70,11 @@ public class FactBaseOneOf implements Reporter {
 	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException 
 	{
 		// all the work is done in the retrieval class
-		// easy way to determine one-of: retrieve ALL facts that satisfy the condition, then pick a random one
-		// ### this might prove too slow, then we need to first pick a random number N and then try to retrieve the Nth fact that satisfies the condition
+		// the fact is picked while checking the facts in a single pass, without collecting all facts that satisfy the condition
 		Retrieval r = new Retrieval(args, context);
-		LogoList result = r.retrieveAll();
-		if (! result.isEmpty()) {
-			int n = FactBaseExtension.rng.nextInt(result.size());
-			return result.get(n);
+		LogoList result = r.retrieveOne();
+		if (result != null) {
+			return result;
 		}
 		// result is empty --> throw an exception
 		throw new ExtensionException("there are no facts satisfying the given condition");
@@ -0,0 +1,74 @@
+/*
+ * FactBaseRemoveIndex.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Command;
+import org.nlogo.api.Context;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "remove-index" primitive for the factbase extension. It drops the indexes of one field 
+ * of a fact base, or the index over a combination of fields, (see {@link FactBaseAddIndex}). The field values are still stored, so retrieval by this field keeps working.
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:remove-index <i>fact-base</i> <i>field-name(s)</i></code>
+ * 
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseRemoveIndex implements Command {
+
+	// expecting a factbase and a field name as input
+	/** The remove-index primitive expects a fact base and a field name (or list of field names) as inputs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.StringType() | Syntax.ListType()});
+	}
+
+	/** Removes the index. First argument {@code args[0]} has to be a fact base, second argument {@code args[1]} the name 
+	 * of one of its fields (or a list of field names).
+	 * 
+	 *  @param args the arguments to this call of remove-index
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof FactBase)) {
+	        throw new ExtensionException ("not a factbase: " + Dump.logoObject(arg0));			
+		}
+		FactBase fb = (FactBase)arg0;
+		fb.removeIndex(FactBase.toFieldNames(args[1].get()));
+	}
+
+}
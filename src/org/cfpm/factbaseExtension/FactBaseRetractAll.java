@@ -31,12 +31,9 @@ import org.nlogo.api.Command;
 import org.nlogo.api.Context;
 import org.nlogo.api.ExtensionException;
 import org.nlogo.api.LogoException;
-import org.nlogo.core.LogoList;
 import org.nlogo.core.Syntax;
 import org.nlogo.core.SyntaxJ;
 
-import java.util.Iterator;
-
 /** This class implements the "retract-all" primitive for the factbase extension. Retract-all finds all facts
  * satisfying the given condition and then retracts them from the fact base.  If there are no such facts,
  * nothing happens.
@@ -70,15 +67,14 @@ public class FactBaseRetractAll implements Command {
 	public void perform(Argument[] args, Context context)
 			throws ExtensionException, LogoException {
 		// use retrieval to do the actual collecting of facts to be deleted; this also checks validity of arguments
+		// only the IDs are collected: the facts do not need to be copied or looked up again to retract them
 		Retrieval retrieval = new Retrieval(args, context);
-		LogoList selectedFacts = retrieval.retrieveAll();
-		FactBaseExtension.writeToNetLogo("Result has " + selectedFacts.size() + " facts: " + selectedFacts.toString(), false, context);
-		// retract the selected facts
-		FactBase fb = retrieval.getFactBase();
-		for (Iterator<Object> fi = selectedFacts.javaIterator(); fi.hasNext(); ) {
-			LogoList fact = (LogoList)fi.next();  // retrieve made facts be LogoLists
-			fb.removeFact(fact);
+		int[] selectedIDs = retrieval.retrieveIDs();
+		if (FactBaseExtension.isTracing()) {
+			FactBaseExtension.writeToNetLogo("Result has " + selectedIDs.length + " facts", false, context);
 		}
+		// retract the selected facts in one go
+		retrieval.getFactBase().removeFacts(selectedIDs);
 		// and we're finished
 		FactBaseExtension.writeToNetLogo("selected facts have been retracted", false, context);
 	}
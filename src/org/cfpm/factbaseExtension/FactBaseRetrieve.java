@@ -37,7 +37,12 @@ import org.nlogo.core.SyntaxJ;
 /** This class implements the "retrieve" primitive for the factbase extension. Retrieve uses a ReporterTask and a List of field names as the condition
  * that facts have to satisfy to be included in the result. If no such facts exist in the specified fact base, an empty list is returned.
  * 
+ * Optionally, a limit and an offset can be given: then the first <i>offset</i> matching facts are skipped and the retrieval
+ * stops as soon as <i>limit</i> facts have been found. To page through a large number of facts, use a cursor instead 
+ * (see {@link FactBaseCursor}).
+ * 
  * To call this primitive from NetLogo, use <code>factbase:retrieve <i>fact-base</i> <i>condition-task</i> <i>condition-field-list</i></code>
+ * or <code>(factbase:retrieve <i>fact-base</i> <i>condition-task</i> <i>condition-field-list</i> <i>limit</i> [<i>offset</i>])</code>
  *
  * @author Ruth Meyer
  *
@@ -49,13 +54,14 @@ public class FactBaseRetrieve implements Reporter {
 	 * as inputs and returns a list of all facts satisfying the given condition. 
 	 */
 	public Syntax getSyntax() {
-		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.ReporterType(), Syntax.ListType()}, Syntax.ListType());
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.ReporterType(), Syntax.ListType(), Syntax.NumberType() | Syntax.RepeatableType()}, Syntax.ListType(), 3);
 	}
 	
 
 	/** Returns all facts satisfying the given condition from the specified fact base. The first argument {@code args[0]} has
 	 * to be a fact base, the second argument {@code args[1]} has to be a reporter task and the third argument has to be a list of
 	 * field names corresponding to the formal arguments used in the task.
+	 * The optional fourth and fifth arguments are the limit and the offset.
 	 * Returns an empty list if no such facts exist. Generates an error if any of the arguments are invalid.
 	 * 
 	 * @param args the arguments to this call of retrieve
@@ -67,9 +73,12 @@ public class FactBaseRetrieve implements Reporter {
 	@Override
 	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException 
 	{
+		// optionally, the number of facts wanted and the number of facts to be skipped
+		int limit = Retrieval.optionalCount(args, 3, Integer.MAX_VALUE, "limit");
+		int offset = Retrieval.optionalCount(args, 4, 0, "offset");
 		// all the work is done in the retrieval class
 		Retrieval r = new Retrieval(args, context);
-		return r.retrieveAll();
+		return r.retrieveAll(offset, limit);
 	}
 	
 	
@@ -0,0 +1,80 @@
+/*
+ * FactBaseRetrieveGreaterThan.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.Reporter;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "retrieve-greater-than" primitive for the factbase extension. It retrieves all facts whose value in the given field is a number
+ * greater than the given number.
+ * The facts are reported in the order they were asserted.
+ * 
+ * If the field has a sorted index (see {@link FactBaseAddIndex}), this takes time proportional to log(n) + the number of matching
+ * facts; otherwise, all facts are scanned. In either case no reporter task is run.
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:retrieve-greater-than <i>fact-base</i> <i>field-name</i> <i>number</i></code>
+ *
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseRetrieveGreaterThan implements Reporter {
+	
+	// expects a reference to the factbase, a field name and a number, returns a list of facts
+	/** The retrieve-greater-than primitive expects a fact base, a field name and a number as inputs and returns a list of facts. 
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.StringType(), Syntax.NumberType()}, Syntax.ListType());
+	}
+	
+	/** Returns all facts with a value in the given field greater than the given number. The first argument {@code args[0]} has to be a fact base, the second argument 
+	 * {@code args[1]} the name of one of its fields, the third argument {@code args[2]} the number to compare with.
+	 * 
+	 * @param args the arguments to this call of retrieve-greater-than
+	 * @param context the NetLogo context
+	 * @return a list of all matching facts (may be empty)
+	 * @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof FactBase)) {
+	        throw new ExtensionException ("not a factbase: " + Dump.logoObject(arg0));			
+		}
+		FactBase fb = (FactBase)arg0;
+		int field = fb.requireFieldIndex(args[1].getString());
+		return fb.retrieveRange(field, args[2].getDoubleValue(), false, Double.POSITIVE_INFINITY, true);
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * FactBaseRetrieveSorted.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.Reporter;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "retrieve-sorted" primitive for the factbase extension. It retrieves all facts satisfying the
+ * specified condition, sorted by the values of the given field in ascending (<code>"asc"</code>) or descending 
+ * (<code>"desc"</code>) order; facts with the same value keep the order they were asserted in. It is an error if the field
+ * of a matching fact does not hold a number. To get only the first few facts, use retrieve-top (see {@link FactBaseRetrieveTop}).
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:retrieve-sorted <i>fact-base</i> <i>condition-task</i> <i>condition-field-list</i> <i>sort-field</i> <i>direction</i></code>
+ *
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseRetrieveSorted implements Reporter {
+
+	/** Direction for sorting by ascending values */
+	static final String ASCENDING = "asc";
+	/** Direction for sorting by descending values */
+	static final String DESCENDING = "desc";
+	
+	// expects a reference to the factbase, a condition (as ReporterTask and List of field names), a field name and a direction, returns a list of facts
+	/** The retrieve-sorted primitive expects a fact base, a condition (specified as a reporter task and a list of corresponding fields),
+	 * a field name and a direction as inputs and returns a list of facts.
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.ReporterType(), Syntax.ListType(), Syntax.StringType(), Syntax.StringType()}, Syntax.ListType());
+	}
+	
+	/** Returns all facts satisfying the given condition from the specified fact base in sort order. The first argument 
+	 * {@code args[0]} has to be a fact base, the second argument {@code args[1]} has to be a reporter task, the third argument
+	 * has to be a list of field names corresponding to the formal arguments used in the task, the fourth argument the name of
+	 * the field to sort by and the fifth argument the direction.
+	 * 
+	 * @param args the arguments to this call of retrieve-sorted
+	 * @param context the NetLogo context
+	 * @return a list of all facts satisfying the condition, sorted by the given field
+	 * @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException 
+	{
+		// all the work is done in the retrieval class
+		Retrieval retrieval = new Retrieval(args, context);
+		int field = retrieval.getFactBase().requireFieldIndex(args[3].getString());
+		return retrieval.retrieveSorted(field, isDescending(args[4].getString()), Integer.MAX_VALUE);
+	}
+	
+	/** Checks the given sort direction.
+	 * 
+	 * @param direction the direction, either {@link #ASCENDING} or {@link #DESCENDING}
+	 * @return true, if the direction is descending; false, if it is ascending
+	 * @throws ExtensionException if the direction is neither
+	 */
+	static boolean isDescending(String direction) throws ExtensionException {
+		if (DESCENDING.equals(direction)) {
+			return true;
+		}
+		if (!ASCENDING.equals(direction)) {
+			throw new ExtensionException("unknown sort direction: " + direction + " (use \"" + ASCENDING + "\" or \"" + DESCENDING + "\")");
+		}
+		return false;
+	}
+
+}
@@ -39,7 +39,11 @@ import org.nlogo.core.SyntaxJ;
  * that you can also specify which fields should be included in the result. So the result does not contain whole facts but only specific parts of 
  * the selected facts.
  * 
+ * Optionally, a limit and an offset can be given: then the first <i>offset</i> matching facts are skipped and the retrieval
+ * stops as soon as <i>limit</i> facts have been found.
+ * 
  * To call this primitive from NetLogo, use <code>factbase:retrieve <i>fact-base</i> <i>condition-task</i> <i>condition-field-list</i> <i>output-field-list</i></code>
+ * or <code>(factbase:retrieve-to <i>fact-base</i> <i>condition-task</i> <i>condition-field-list</i> <i>output-field-list</i> <i>limit</i> [<i>offset</i>])</code>
  *
  * @author Ruth Meyer
  *
@@ -52,14 +56,15 @@ public class FactBaseRetrieveTo implements Reporter {
 	 * field names for the output as inputs and returns a list of all facts satisfying the given condition filtered by this output format.
 	 */
 	public Syntax getSyntax() {
-		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.ReporterType(), Syntax.ListType(), Syntax.ListType()},
-									 Syntax.ListType());
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.ReporterType(), Syntax.ListType(), Syntax.ListType(), 
+												Syntax.NumberType() | Syntax.RepeatableType()}, Syntax.ListType(), 4);
 	}
 	
 
 	/** Returns the specified parts of all facts satisfying the given condition from the specified fact base. The first argument {@code args[0]} has
 	 * to be a fact base, the second argument {@code args[1]} has to be a reporter task, the third argument has to be a list of
 	 * field names corresponding to the formal arguments used in the task, and the fourth argument has to be a list of field names to be included in the output.
+	 * The optional fifth and sixth arguments are the limit and the offset.
 	 * Returns an empty list if no such facts exist. Generates an error if any of the arguments are invalid.
 	 * 
 	 * @param args the arguments to this call of retrieve-to
@@ -71,9 +76,12 @@ public class FactBaseRetrieveTo implements Reporter {
 	@Override
 	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException 
 	{
+		// optionally, the number of facts wanted and the number of facts to be skipped
+		int limit = Retrieval.optionalCount(args, 4, Integer.MAX_VALUE, "limit");
+		int offset = Retrieval.optionalCount(args, 5, 0, "offset");
 		// all the work is done in the retrieval class
 		Retrieval r = new Retrieval(args, context);
-		return r.retrieveAll();
+		return r.retrieveAll(offset, limit);
 	}
 
 
@@ -0,0 +1,82 @@
+/*
+ * FactBaseRetrieveTop.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.Reporter;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "retrieve-top" primitive for the factbase extension. It retrieves the first k facts satisfying
+ * the specified condition when sorted by the values of the given field in ascending (<code>"asc"</code>) or descending 
+ * (<code>"desc"</code>) order, e.g. the 5 most recent facts about an agent. If there are fewer than k such facts, all of them
+ * are reported. Only k facts are kept while checking the facts, so the matching facts are neither collected nor sorted.
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:retrieve-top <i>fact-base</i> <i>condition-task</i> <i>condition-field-list</i> <i>sort-field</i> <i>direction</i> <i>k</i></code>
+ *
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseRetrieveTop implements Reporter {
+
+	// expects a reference to the factbase, a condition (as ReporterTask and List of field names), a field name, a direction and a number k, returns a list of facts
+	/** The retrieve-top primitive expects a fact base, a condition (specified as a reporter task and a list of corresponding fields),
+	 * a field name, a direction and an integer number (number of facts wanted) as inputs and returns a list of facts.
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.ReporterType(), Syntax.ListType(), Syntax.StringType(), Syntax.StringType(), Syntax.NumberType()}, Syntax.ListType());
+	}
+	
+	/** Returns the first k facts satisfying the given condition from the specified fact base in sort order. The first argument 
+	 * {@code args[0]} has to be a fact base, the second argument {@code args[1]} has to be a reporter task, the third argument
+	 * has to be a list of field names corresponding to the formal arguments used in the task, the fourth argument the name of
+	 * the field to sort by, the fifth argument the direction (see {@link FactBaseRetrieveSorted}) and the sixth argument an
+	 * integer number.
+	 * 
+	 * @param args the arguments to this call of retrieve-top
+	 * @param context the NetLogo context
+	 * @return a list of up to k facts satisfying the condition, sorted by the given field
+	 * @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException 
+	{
+		int k = args[5].getIntValue();
+		if (k < 0) {
+			throw new ExtensionException("cannot retrieve " + k + " facts; the given number k has to be at least 0");
+		}
+		// all the work is done in the retrieval class
+		Retrieval retrieval = new Retrieval(args, context);
+		int field = retrieval.getFactBase().requireFieldIndex(args[3].getString());
+		return retrieval.retrieveSorted(field, FactBaseRetrieveSorted.isDescending(args[4].getString()), k);
+	}
+
+}
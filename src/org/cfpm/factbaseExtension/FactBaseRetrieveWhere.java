@@ -0,0 +1,95 @@
+/*
+ * FactBaseRetrieveWhere.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.api.Reporter;
+import org.nlogo.core.LogoList;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "retrieve-where" primitive for the factbase extension. It retrieves all facts satisfying
+ * a condition given as a list of clauses <code>[field-name operator value]</code>, all of which have to hold, e.g.
+ * <code>factbase:retrieve-where fb (list (list "person" "=" self) (list "status" "=" 2) (list "time" "&lt;=" ticks))</code>.
+ * Operators are <code>= != &lt; &lt;= &gt; &gt;=</code>.
+ * 
+ * Unlike retrieve (see {@link FactBaseRetrieve}), no reporter task is run for each fact; the condition is answered from the
+ * indexes of the fact base as far as possible (see {@link Query}). The facts are reported in the order they were asserted.
+ * 
+ * Optionally, a list of output fields can be given, as for retrieve-to (see {@link FactBaseRetrieveTo}); then only the values
+ * of these fields are read and reported for each matching fact.
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:retrieve-where <i>fact-base</i> <i>clause-list</i></code> or 
+ * <code>(factbase:retrieve-where <i>fact-base</i> <i>clause-list</i> <i>output-field-list</i>)</code>
+ *
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseRetrieveWhere implements Reporter {
+	
+	// expects a reference to the factbase, a list of clauses and optionally a list of output fields, returns a list of facts
+	/** The retrieve-where primitive expects a fact base, a list of clauses and optionally a list of output fields as inputs and
+	 * returns a list of facts. 
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(), Syntax.ListType(), Syntax.ListType() | Syntax.RepeatableType()}, Syntax.ListType(), 2);
+	}
+	
+	/** Returns all facts satisfying all given clauses. The first argument {@code args[0]} has to be a fact base, the second
+	 * argument {@code args[1]} a list of clauses. If there is a third argument {@code args[2]}, it has to be a list of output fields.
+	 * 
+	 * @param args the arguments to this call of retrieve-where
+	 * @param context the NetLogo context
+	 * @return a list of all matching facts (may be empty)
+	 * @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Reporter#report(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof FactBase)) {
+	        throw new ExtensionException ("not a factbase: " + Dump.logoObject(arg0));			
+		}
+		FactBase fb = (FactBase)arg0;
+		Query query = Query.parse(fb, args[1].getList());
+		int[] outFields = null;
+		if (args.length > 2) {
+			LogoList names = args[2].getList();
+			outFields = new int[names.size()];
+			for (int i = 0; i < outFields.length; i++) {
+				outFields[i] = fb.requireFieldIndex(names.get(i).toString());
+			}
+		}
+		return fb.getFacts(query.execute(), outFields);
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * FactBaseSetAutoCompact.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Command;
+import org.nlogo.api.Context;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "set-auto-compact" primitive for the factbase extension. It switches on automatic compaction
+ * (see {@link FactBaseCompact}) for the given fact base: whenever the ratio of retracted facts to all fact IDs handed out
+ * exceeds the given number after a retraction, the fact base is compacted. A ratio of 0 switches automatic compaction off again,
+ * which is the default. 
+ * 
+ * Since compaction renumbers facts, automatic compaction is opt-in: only use it for fact bases whose fact IDs (as reported by 
+ * r-assert) are not kept across retractions.
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:set-auto-compact <i>fact-base</i> <i>ratio</i></code>
+ * 
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseSetAutoCompact implements Command {
+
+	// expecting a factbase and a number between 0 and 1 as input
+	/** The set-auto-compact primitive expects a fact base and a number (the ratio) as inputs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(), Syntax.NumberType()});
+	}
+
+	/** Sets the ratio for automatic compaction. First argument {@code args[0]} has to be a fact base, second argument
+	 * {@code args[1]} has to be a number between 0 and 1.
+	 * 
+	 *  @param args the arguments to this call of set-auto-compact
+	 *  @param context the NetLogo context
+	 *  @throws ExtensionException if any of the arguments are invalid
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		Object arg0 = args[0].get();
+		if (! (arg0 instanceof FactBase)) {
+	        throw new ExtensionException ("not a factbase: " + Dump.logoObject(arg0));			
+		}
+		FactBase fb = (FactBase)arg0;
+		fb.setAutoCompactRatio(args[1].getDoubleValue());
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * FactBaseStopForeach.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Command;
+import org.nlogo.api.Context;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/** This class implements the "stop-foreach" primitive for the factbase extension. Used in the command task of 
+ * <code>factbase:foreach</code> (see {@link FactBaseForeach}), it ends the iteration once the command task has finished
+ * for the current fact. (NetLogo's <code>stop</code> only leaves the command task for the current fact.)
+ * 
+ * To call this primitive from NetLogo, use <code>factbase:stop-foreach</code>
+ * 
+ * @author Ruth Meyer
+ *
+ */
+public class FactBaseStopForeach implements Command {
+
+	/** The stop-foreach primitive expects no inputs.
+	 * 
+	 */
+	public Syntax getSyntax() {
+		return SyntaxJ.commandSyntax();
+	}
+
+	/** Stops the innermost foreach iteration in progress. Generates an error if there is none.
+	 * 
+	 * @param args the arguments to this call of stop-foreach (none)
+	 * @param context the NetLogo context
+	 * @throws ExtensionException if not called within foreach
+	 * @see org.nlogo.api.Command#perform(org.nlogo.api.Argument[], org.nlogo.api.Context)
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException, LogoException {
+		FactBaseForeach.stopInnermost();
+	}
+
+}
@@ -0,0 +1,199 @@
+/*
+ * FactHashIndex.java
+ *
+ * Copyright (c) 2016 Centre for Policy Modelling
+ *
+ * This file is part of Factbase-NetLogoExtension.
+ *
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ *
+ */
+
+package org.cfpm.factbaseExtension;
+
+import org.nlogo.core.LogoList;
+
+/** This class implements an index of whole facts, mapping the content of a fact to its fact ID. It is used to detect duplicates
+ * when asserting facts and to find the ID of a given fact, both in time proportional to the number of fields only.
+ *
+ * The index is an open addressing hash table (linear probing) which stores nothing but fact IDs and their hash codes; the facts
+ * themselves are compared against the fact base they are stored in.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class FactHashIndex {
+
+	/** Initial number of slots (has to be a power of 2) */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The fact base whose facts are indexed */
+	private final FactBase fb;
+	/** The slots of the hash table: fact ID + 1, or 0 if the slot is empty */
+	private int[] slots = new int[INITIAL_CAPACITY];
+	/** The hash codes of the facts in the corresponding slots */
+	private int[] hashes = new int[INITIAL_CAPACITY];
+	/** The number of facts in the index */
+	private int count = 0;
+
+	/** Creates an empty index for the given fact base.
+	 *
+	 * @param fb the fact base whose facts are indexed
+	 */
+	FactHashIndex(FactBase fb) {
+		this.fb = fb;
+	}
+
+	/** Computes the hash code of the given fact. Facts with identical field values have identical hash codes.
+	 *
+	 * @param fact the fact
+	 * @return its hash code
+	 */
+	static int hash(LogoList fact) {
+		int h = 1;
+		for (int i = 0; i < fact.size(); i++) {
+			Object value = Column.key(fact.get(i));
+			h = 31 * h + (value == null ? 0 : value.hashCode());
+		}
+		return h;
+	}
+
+	/** Finds the ID of the fact with the given field values.
+	 *
+	 * @param fact the fact to look for
+	 * @param hash the fact's hash code as computed by {@link #hash(LogoList)}
+	 * @return the fact's ID, or -1 if there is no such fact
+	 */
+	int find(LogoList fact, int hash) {
+		int mask = slots.length - 1;
+		for (int i = home(hash, mask); slots[i] != 0; i = (i + 1) & mask) {
+			if (hashes[i] == hash && fb.factEquals(slots[i] - 1, fact)) {
+				return slots[i] - 1;
+			}
+		}
+		return -1;
+	}
+
+	/** Adds the fact with the given ID to the index. The caller has to make sure that no identical fact is indexed yet.
+	 *
+	 * @param id the fact ID
+	 * @param hash the fact's hash code
+	 */
+	void add(int id, int hash) {
+		if ((count + 1) * 3 > slots.length * 2) {
+			resize(slots.length * 2);
+		}
+		insert(id, hash);
+		count++;
+	}
+
+	/** Removes the fact with the given ID from the index.
+	 *
+	 * @param id the fact ID
+	 * @param hash the fact's hash code
+	 */
+	void remove(int id, int hash) {
+		int mask = slots.length - 1;
+		int i = home(hash, mask);
+		while (slots[i] != id + 1) {
+			if (slots[i] == 0) {
+				// not indexed
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		// backward shift deletion: move following entries of the same probe sequence into the gap
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (slots[j] == 0) {
+				break;
+			}
+			int k = home(hashes[j], mask);
+			// the entry at j may move to i only if its home slot is not cyclically in (i, j]
+			boolean movable = (i <= j) ? (k <= i || k > j) : (k <= i && k > j);
+			if (movable) {
+				slots[i] = slots[j];
+				hashes[i] = hashes[j];
+				i = j;
+			}
+		}
+		slots[i] = 0;
+		count--;
+	}
+
+	/** Removes all facts from the index.
+	 *
+	 */
+	void clear() {
+		slots = new int[INITIAL_CAPACITY];
+		hashes = new int[INITIAL_CAPACITY];
+		count = 0;
+	}
+
+	/** Returns an estimate of the heap memory used by this index in bytes.
+	 *
+	 * @return estimated number of bytes
+	 */
+	long memoryFootprint() {
+		return 32 + 2 * (16 + 4L * slots.length);
+	}
+
+	/** Helper method: inserts an entry without checking the load factor.
+	 *
+	 * @param id the fact ID
+	 * @param hash the fact's hash code
+	 */
+	private void insert(int id, int hash) {
+		int mask = slots.length - 1;
+		int i = home(hash, mask);
+		while (slots[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		slots[i] = id + 1;
+		hashes[i] = hash;
+	}
+
+	/** Helper method: rehashes all entries into a table with the given number of slots.
+	 *
+	 * @param capacity the new number of slots (a power of 2)
+	 */
+	private void resize(int capacity) {
+		int[] oldSlots = slots;
+		int[] oldHashes = hashes;
+		slots = new int[capacity];
+		hashes = new int[capacity];
+		for (int i = 0; i < oldSlots.length; i++) {
+			if (oldSlots[i] != 0) {
+				insert(oldSlots[i] - 1, oldHashes[i]);
+			}
+		}
+	}
+
+	/** Helper method: determines the home slot for the given hash code.
+	 *
+	 * @param hash a hash code
+	 * @param mask the table size - 1
+	 * @return the index of the first slot to probe
+	 */
+	private static int home(int hash, int mask) {
+		int h = hash * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+}
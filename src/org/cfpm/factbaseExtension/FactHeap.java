@@ -0,0 +1,161 @@
+/*
+ * FactHeap.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import java.util.Arrays;
+
+/** This class implements a bounded heap of fact IDs ordered by a number (the value of a field), used to find the k facts with
+ * the smallest or largest values without sorting all matching facts (see {@link Retrieval#retrieveSorted(int, boolean, int)}).
+ * Facts with the same value are ordered by ID, that means in the order they were asserted.
+ * 
+ * The heap keeps the worst of the facts kept so far at its root, so a new fact only has to be compared with the root once the
+ * heap is full. IDs and values are kept in primitive arrays which grow as needed up to the bound.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class FactHeap {
+
+	/** Initial capacity of the arrays */
+	private static final int INITIAL_CAPACITY = 16;
+	
+	/** The maximum number of facts to be kept */
+	private final int bound;
+	/** Whether larger values come first */
+	private final boolean descending;
+	/** The fact IDs, arranged as a heap with the worst fact at position 0 */
+	private int[] ids;
+	/** The values of the facts at the same positions */
+	private double[] values;
+	/** The number of facts in the heap */
+	private int size = 0;
+	
+	/** Creates an empty heap.
+	 * 
+	 * @param bound the maximum number of facts to be kept (at least 0)
+	 * @param descending true, if the facts with the largest values are wanted; false, for the smallest values
+	 */
+	FactHeap(int bound, boolean descending) {
+		this.bound = bound;
+		this.descending = descending;
+		int capacity = Math.min(bound, INITIAL_CAPACITY);
+		ids = new int[capacity];
+		values = new double[capacity];
+	}
+	
+	/** Offers a fact to the heap. It is kept if the heap is not full yet or if it comes before the worst fact kept so far,
+	 * which is then dropped.
+	 * 
+	 * @param id the fact ID
+	 * @param value the value of the fact
+	 */
+	void offer(int id, double value) {
+		if (size < bound) {
+			if (size == ids.length) {
+				int capacity = (int)Math.min((long)bound, 2L * size);
+				ids = Arrays.copyOf(ids, capacity);
+				values = Arrays.copyOf(values, capacity);
+			}
+			// sift up from the new leaf
+			int pos = size++;
+			while (pos > 0) {
+				int parent = (pos - 1) / 2;
+				if (!worse(id, value, ids[parent], values[parent])) {
+					break;
+				}
+				ids[pos] = ids[parent];
+				values[pos] = values[parent];
+				pos = parent;
+			}
+			ids[pos] = id;
+			values[pos] = value;
+		}
+		else if (size > 0 && worse(ids[0], values[0], id, value)) {
+			replaceRoot(id, value);
+		}
+	}
+	
+	/** Returns the IDs of the facts kept, best first. This empties the heap.
+	 * 
+	 * @return the fact IDs in sort order
+	 */
+	int[] toSortedIDs() {
+		int[] sorted = new int[size];
+		// repeatedly take out the worst fact, filling the result from the end
+		for (int i = size - 1; i >= 0; i--) {
+			sorted[i] = ids[0];
+			// the last fact moves into the gap
+			size = i;
+			if (size > 0) {
+				replaceRoot(ids[size], values[size]);
+			}
+		}
+		return sorted;
+	}
+	
+	/** Helper method: replaces the fact at the root by the given fact and restores the heap order.
+	 * 
+	 * @param id the fact ID
+	 * @param value the value of the fact
+	 */
+	private void replaceRoot(int id, double value) {
+		int pos = 0;
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && worse(ids[child + 1], values[child + 1], ids[child], values[child])) {
+				child++;
+			}
+			if (!worse(ids[child], values[child], id, value)) {
+				break;
+			}
+			ids[pos] = ids[child];
+			values[pos] = values[child];
+			pos = child;
+		}
+		ids[pos] = id;
+		values[pos] = value;
+	}
+	
+	/** Helper method: checks if the first fact comes after the second fact in sort order.
+	 * 
+	 * @param id1 the ID of the first fact
+	 * @param value1 the value of the first fact
+	 * @param id2 the ID of the second fact
+	 * @param value2 the value of the second fact
+	 * @return true, if the first fact comes after the second one
+	 */
+	private boolean worse(int id1, double value1, int id2, double value2) {
+		if (value1 != value2) {
+			return descending ? value1 < value2 : value1 > value2;
+		}
+		return id1 > id2;
+	}
+
+}
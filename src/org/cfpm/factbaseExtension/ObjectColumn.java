@@ -0,0 +1,171 @@
+/*
+ * ObjectColumn.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import java.util.Arrays;
+
+/** This class implements a column holding arbitrary NetLogo values (strings, booleans, agents, lists, ...). The values are
+ * dictionary encoded: the column only stores int codes, the values themselves are kept once in the shared 
+ * {@link ValueDictionary}.
+ * 
+ * @author Ruth Meyer
+ *
+ */
+class ObjectColumn extends Column {
+
+	/** Holder for the codes of a column (shared with the dictionary, which releases them when the column is garbage collected) */
+	static class Codes {
+		/** The codes of the values, indexed by fact ID (-1 = no value) */
+		int[] codes;
+	}
+	
+	/** The dictionary used to encode values */
+	private final ValueDictionary dictionary;
+	/** The codes of this column */
+	final Codes codes = new Codes();
+	
+	/** Creates an empty column of objects.
+	 * 
+	 */
+	ObjectColumn() {
+		this(INITIAL_CAPACITY);
+	}
+	
+	/** Creates a column of objects holding the numbers of the given column. Rows of retracted facts get codes as well, so 
+	 * the caller has to clear them (see {@link FactBase#assertFact(org.nlogo.core.LogoList)}).
+	 * 
+	 * @param numbers the column of numbers to be converted
+	 * @param rows the number of rows in use
+	 * @param capacity the number of rows to be allocated
+	 */
+	ObjectColumn(DoubleColumn numbers, int rows, int capacity) {
+		this(capacity);
+		for (int i = 0; i < rows; i++) {
+			codes.codes[i] = dictionary.acquire(numbers.get(i));
+		}
+	}
+	
+	/** Helper constructor: creates an empty column with the given capacity.
+	 * 
+	 * @param capacity the number of rows to be allocated
+	 */
+	private ObjectColumn(int capacity) {
+		dictionary = FactBaseExtension.dictionary;
+		codes.codes = new int[capacity];
+		Arrays.fill(codes.codes, -1);
+		dictionary.register(this);
+	}
+	
+	/** Returns the dictionary code of the value stored in the given row. Two rows hold equal values if and only if their
+	 * codes are equal.
+	 * 
+	 * @param row the row (= fact ID)
+	 * @return the code of the value (or -1 if there is none)
+	 */
+	int getCode(int row) {
+		return codes.codes[row];
+	}
+	
+	/** Returns the dictionary used to encode the values of this column.
+	 * 
+	 * @return the dictionary
+	 */
+	ValueDictionary getDictionary() {
+		return dictionary;
+	}
+	
+	@Override
+	Object get(int row) {
+		int code = codes.codes[row];
+		return (code < 0) ? null : dictionary.get(code);
+	}
+
+	@Override
+	Column set(int row, Object value) {
+		int[] c = codes.codes;
+		if (row >= c.length) {
+			int oldLength = c.length;
+			c = Arrays.copyOf(c, Math.max(row + 1, oldLength * 2));
+			Arrays.fill(c, oldLength, c.length, -1);
+			codes.codes = c;
+		}
+		int code = dictionary.acquire(value);
+		if (c[row] >= 0) {
+			dictionary.release(c[row]);
+		}
+		c[row] = code;
+		return this;
+	}
+
+	@Override
+	void clear(int row) {
+		int[] c = codes.codes;
+		if (c[row] >= 0) {
+			dictionary.release(c[row]);
+			c[row] = -1;
+		}
+	}
+
+	@Override
+	void move(int from, int to) {
+		// the reference moves along, so the source row is left empty
+		int[] c = codes.codes;
+		if (c[to] >= 0) {
+			dictionary.release(c[to]);
+		}
+		c[to] = c[from];
+		c[from] = -1;
+	}
+
+	@Override
+	void trim(int rows) {
+		codes.codes = Arrays.copyOf(codes.codes, Math.max(rows, INITIAL_CAPACITY));
+	}
+
+	@Override
+	boolean valueEquals(int row, Object value) {
+		if (value instanceof Double && (Double)value == 0.0) {
+			// 0.0 and -0.0 have different codes
+			return key(get(row)).equals(key(value));
+		}
+		// equal values have equal codes
+		int code = codes.codes[row];
+		return code >= 0 && code == dictionary.lookup(value);
+	}
+
+	@Override
+	int valueHash(int row) {
+		Object stored = getKey(row);
+		return (stored == null) ? 0 : stored.hashCode();
+	}
+
+	@Override
+	long memoryFootprint() {
+		return 16 + 16 + 16 + 4L * codes.codes.length;
+	}
+
+}
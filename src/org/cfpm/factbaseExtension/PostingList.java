@@ -0,0 +1,394 @@
+/*
+ * PostingList.java
+ *
+ * Copyright (c) 2016 Centre for Policy Modelling
+ *
+ * This file is part of Factbase-NetLogoExtension.
+ *
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ *
+ */
+
+package org.cfpm.factbaseExtension;
+
+import java.util.Arrays;
+
+/** This class implements the set of fact IDs associated with one value of a field (a "posting list") in the indexes of a fact base.
+ *
+ * IDs are kept as primitive ints in one of two representations: as long as the set is sparse, it is a sorted int array (4 bytes per ID,
+ * binary search for lookup and removal); once it becomes dense in relation to the range of IDs it covers, it switches to a bitmap
+ * (1 bit per ID in the range, constant time lookup and removal). Both representations iterate IDs in ascending order.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class PostingList {
+
+	/** Initial capacity of the sorted array */
+	private static final int INITIAL_CAPACITY = 4;
+	/** Below this number of IDs we never bother with a bitmap */
+	private static final int MIN_BITMAP_SIZE = 64;
+
+	/** The sorted array of IDs (null if the bitmap representation is used) */
+	private int[] ids;
+	/** The bitmap of IDs (null if the array representation is used); bit b of word w stands for ID (wordOffset + w) * 64 + b */
+	private long[] words;
+	/** Index of the first word covered by the bitmap */
+	private int wordOffset;
+	/** The number of IDs in this posting list */
+	private int size = 0;
+
+	/** Creates an empty posting list.
+	 *
+	 */
+	PostingList() {
+		ids = new int[INITIAL_CAPACITY];
+	}
+
+	/** Creates a posting list containing exactly the given ID.
+	 *
+	 * @param id the first ID
+	 */
+	PostingList(int id) {
+		this();
+		ids[0] = id;
+		size = 1;
+	}
+
+	/** Returns the number of IDs in this posting list.
+	 *
+	 * @return the number of IDs
+	 */
+	int size() {
+		return size;
+	}
+
+	/** Returns true if this posting list contains no IDs.
+	 *
+	 * @return true, if empty; otherwise, false
+	 */
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/** Checks if the given ID is contained in this posting list.
+	 *
+	 * @param id the ID to look for
+	 * @return true, if the ID is contained; otherwise, false
+	 */
+	boolean contains(int id) {
+		if (words != null) {
+			int w = (id >> 6) - wordOffset;
+			return w >= 0 && w < words.length && (words[w] & (1L << id)) != 0;
+		}
+		return Arrays.binarySearch(ids, 0, size, id) >= 0;
+	}
+
+	/** Adds the given ID to this posting list. Adding an ID larger than all others (the usual case when asserting facts)
+	 * is an amortised constant time operation.
+	 *
+	 * @param id the ID to be added
+	 * @return true, if the ID was added; false, if it was already contained
+	 */
+	boolean add(int id) {
+		if (words != null) {
+			int w = (id >> 6) - wordOffset;
+			if (w < 0 || w >= words.length) {
+				growBitmap(id >> 6);
+				w = (id >> 6) - wordOffset;
+			}
+			long bit = 1L << id;
+			if ((words[w] & bit) != 0) {
+				return false;
+			}
+			words[w] |= bit;
+			size++;
+			return true;
+		}
+		int pos;
+		if (size == 0 || ids[size - 1] < id) {
+			pos = size;
+		}
+		else {
+			pos = Arrays.binarySearch(ids, 0, size, id);
+			if (pos >= 0) {
+				return false;
+			}
+			pos = -(pos + 1);
+		}
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+		}
+		System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+		ids[pos] = id;
+		size++;
+		if (size >= MIN_BITMAP_SIZE && bitmapIsSmaller()) {
+			useBitmap();
+		}
+		return true;
+	}
+
+	/** Removes the given ID from this posting list. Takes constant time in the bitmap representation and a binary search plus
+	 * a block move in the array representation.
+	 *
+	 * @param id the ID to be removed
+	 * @return true, if the ID was removed; false, if it was not contained
+	 */
+	boolean remove(int id) {
+		if (words != null) {
+			int w = (id >> 6) - wordOffset;
+			long bit = 1L << id;
+			if (w < 0 || w >= words.length || (words[w] & bit) == 0) {
+				return false;
+			}
+			words[w] &= ~bit;
+			size--;
+			// switch back once the bitmap is at least twice the size of the equivalent array
+			if (size < MIN_BITMAP_SIZE / 2 || size < words.length) {
+				useArray();
+			}
+			return true;
+		}
+		int pos = Arrays.binarySearch(ids, 0, size, id);
+		if (pos < 0) {
+			return false;
+		}
+		System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+		size--;
+		return true;
+	}
+
+	/** Removes all IDs of the given posting list from this posting list. In the array representation, this is done in one pass
+	 * over the array instead of moving the block behind each removed ID.
+	 *
+	 * @param other the IDs to be removed
+	 * @return the number of IDs removed
+	 */
+	int removeAll(PostingList other) {
+		if (words != null || other.size == 1) {
+			int removed = 0;
+			for (int id = other.first(); id >= 0; id = other.next(id)) {
+				if (remove(id)) {
+					removed++;
+				}
+			}
+			return removed;
+		}
+		int j = 0;
+		for (int k = 0; k < size; k++) {
+			if (!other.contains(ids[k])) {
+				ids[j++] = ids[k];
+			}
+		}
+		int removed = size - j;
+		size = j;
+		return removed;
+	}
+
+	/** Checks if this posting list currently uses the bitmap representation.
+	 *
+	 * @return true, if the IDs are kept in a bitmap; false, if they are kept in a sorted array
+	 */
+	boolean isBitmap() {
+		return words != null;
+	}
+
+	/** Returns the smallest ID in this posting list, or -1 if it is empty.
+	 *
+	 * @return the first ID
+	 */
+	int first() {
+		return next(-1);
+	}
+
+	/** Returns the smallest ID in this posting list that is larger than the given ID, or -1 if there is none.
+	 * Together with {@link #first()} this allows iterating over the IDs without allocating an iterator.
+	 *
+	 * @param after the ID to start after
+	 * @return the next ID or -1
+	 */
+	int next(int after) {
+		int from = after + 1;
+		if (words != null) {
+			int w = Math.max((from >> 6) - wordOffset, 0);
+			if (w >= words.length) {
+				return -1;
+			}
+			long word = words[w];
+			if ((from >> 6) - wordOffset == w) {
+				word &= -1L << from;
+			}
+			while (true) {
+				if (word != 0) {
+					return (w + wordOffset) * 64 + Long.numberOfTrailingZeros(word);
+				}
+				if (++w == words.length) {
+					return -1;
+				}
+				word = words[w];
+			}
+		}
+		int pos = Arrays.binarySearch(ids, 0, size, from);
+		if (pos < 0) {
+			pos = -(pos + 1);
+		}
+		return (pos < size) ? ids[pos] : -1;
+	}
+
+	/** Returns the k-th smallest ID in this posting list. Takes constant time in the array representation and time proportional
+	 * to the size of the bitmap otherwise.
+	 *
+	 * @param k the position of the ID (0 &lt;= k &lt; size)
+	 * @return the ID at this position
+	 */
+	int get(int k) {
+		if (words == null) {
+			return ids[k];
+		}
+		int w = 0;
+		while (Long.bitCount(words[w]) <= k) {
+			k -= Long.bitCount(words[w]);
+			w++;
+		}
+		long word = words[w];
+		for (; k > 0; k--) {
+			// drop the lowest set bit
+			word &= word - 1;
+		}
+		return (w + wordOffset) * 64 + Long.numberOfTrailingZeros(word);
+	}
+
+	/** Returns the IDs of this posting list as a sorted array.
+	 *
+	 * @return a new array with all IDs in ascending order
+	 */
+	int[] toArray() {
+		if (words == null) {
+			return Arrays.copyOf(ids, size);
+		}
+		int[] result = new int[size];
+		int j = 0;
+		for (int id = first(); id >= 0; id = next(id)) {
+			result[j++] = id;
+		}
+		return result;
+	}
+
+	/** Computes the intersection of this posting list and the given posting list.
+	 *
+	 * @param other the other posting list (may be null, meaning empty)
+	 * @return a new posting list with all IDs contained in both posting lists
+	 */
+	PostingList intersect(PostingList other) {
+		PostingList result = new PostingList();
+		if (other == null) {
+			return result;
+		}
+		// iterate over the smaller list and probe the larger one
+		PostingList small = (size <= other.size) ? this : other;
+		PostingList large = (small == this) ? other : this;
+		for (int id = small.first(); id >= 0; id = small.next(id)) {
+			if (large.contains(id)) {
+				result.add(id);
+			}
+		}
+		return result;
+	}
+
+	/** Returns an estimate of the heap memory used by this posting list in bytes (object headers included).
+	 *
+	 * @return estimated number of bytes
+	 */
+	long memoryFootprint() {
+		// object header + 2 references + 2 ints, plus the array with its header
+		long bytes = 32;
+		if (words != null) {
+			bytes += 16 + 8L * words.length;
+		}
+		else {
+			bytes += 16 + 4L * ids.length;
+		}
+		return bytes;
+	}
+
+	/** Helper method: checks if a bitmap over the current range of IDs would need less memory than the sorted array.
+	 *
+	 * @return true, if the bitmap representation is smaller
+	 */
+	private boolean bitmapIsSmaller() {
+		long rangeWords = (ids[size - 1] >> 6) - (ids[0] >> 6) + 1;
+		return rangeWords * 8 < (long)size * 4;
+	}
+
+	/** Helper method: switches to the bitmap representation.
+	 *
+	 */
+	private void useBitmap() {
+		wordOffset = ids[0] >> 6;
+		words = new long[(ids[size - 1] >> 6) - wordOffset + 1];
+		for (int i = 0; i < size; i++) {
+			int id = ids[i];
+			words[(id >> 6) - wordOffset] |= 1L << id;
+		}
+		ids = null;
+	}
+
+	/** Helper method: switches to the sorted array representation.
+	 *
+	 */
+	private void useArray() {
+		int[] array = new int[Math.max(size, INITIAL_CAPACITY)];
+		int j = 0;
+		for (int id = first(); id >= 0; id = next(id)) {
+			array[j++] = id;
+		}
+		ids = array;
+		words = null;
+	}
+
+	/** Helper method: grows the bitmap so that it covers the given word.
+	 *
+	 * @param word the (absolute) index of the word to be covered
+	 */
+	private void growBitmap(int word) {
+		int newOffset = Math.min(wordOffset, word);
+		int newEnd = Math.max(wordOffset + words.length, word + 1);
+		if (newEnd > wordOffset + words.length) {
+			// leave some room for IDs still to come
+			newEnd = Math.max(newEnd, wordOffset + words.length + (words.length >> 1));
+		}
+		long[] grown = new long[newEnd - newOffset];
+		System.arraycopy(words, 0, grown, wordOffset - newOffset, words.length);
+		words = grown;
+		wordOffset = newOffset;
+	}
+
+	/** Returns a string representation of this posting list.
+	 *
+	 */
+	public String toString() {
+		StringBuilder buff = new StringBuilder("( ");
+		for (int id = first(); id >= 0; id = next(id)) {
+			buff.append(id);
+			buff.append(" ");
+		}
+		buff.append(")");
+		return buff.toString();
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * PreparedRetrieval.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import java.util.Iterator;
+
+import org.nlogo.api.ExtensionException;
+import org.nlogo.core.LogoList;
+import org.nlogo.nvm.AnonymousReporter;
+import org.nlogo.nvm.Reporter;
+
+/** This class holds everything about a retrieval that only depends on the condition task and the field lists, not on the 
+ * current call: the indices of the condition fields and output fields and the comparisons usable for narrowing down the facts 
+ * (see {@link QueryPlanner}). Prepared retrievals are cached per fact base (see {@link FactBase#prepareRetrieval}), so that 
+ * repeated calls with the same condition, e.g. within <code>ask turtles [...]</code>, only pay for this once.
+ * 
+ * Every evaluation of an anonymous reporter creates a new task object, but all of them share the same compiled body, which is
+ * therefore used to recognise the condition.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class PreparedRetrieval {
+
+	/** The key prepared retrievals are cached under */
+	static final class Key {
+		/** The compiled body of the condition task (compared by identity) */
+		private final Reporter body;
+		/** The condition fields */
+		private final LogoList fields;
+		/** The output fields (or null) */
+		private final LogoList outFields;
+		/** The hash code of the key */
+		private final int hash;
+
+		/** Creates a key.
+		 *
+		 * @param body the compiled body of the condition task
+		 * @param fields the condition fields
+		 * @param outFields the output fields (or null)
+		 */
+		Key(Reporter body, LogoList fields, LogoList outFields) {
+			this.body = body;
+			this.fields = fields;
+			this.outFields = outFields;
+			this.hash = 31 * (31 * System.identityHashCode(body) + fields.hashCode()) + (outFields == null ? 0 : outFields.hashCode());
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key)o;
+			return body == k.body && fields.equals(k.fields) && (outFields == null ? k.outFields == null : outFields.equals(k.outFields));
+		}
+	}
+
+	/** The indices of the condition fields */
+	final int[] fieldIndices;
+	/** The indices of the output fields (or null if whole facts are to be returned) */
+	final int[] outFieldIndices;
+	/** The comparisons usable for narrowing down the facts */
+	final QueryPlanner planner;
+
+	/** Prepares a retrieval from the given fact base.
+	 *
+	 * @param fb the fact base
+	 * @param task the condition task
+	 * @param fields the condition fields, one for each formal argument of the task
+	 * @param outFields the output fields (or null)
+	 * @throws ExtensionException if the numbers of formal arguments and fields differ or a field name is invalid
+	 */
+	PreparedRetrieval(FactBase fb, AnonymousReporter task, LogoList fields, LogoList outFields) throws ExtensionException {
+		// check that there's a field for every formal argument to the task
+		if (task.formals().length != fields.size()) {
+			throw new ExtensionException("the condition task has " + task.formals().length + " arguments but there are " + fields.size() + " fields specified to match them");
+		}
+		fieldIndices = getFieldIndices(fb, fields);
+		outFieldIndices = (outFields == null) ? null : getFieldIndices(fb, outFields);
+		planner = new QueryPlanner(fb, task, fieldIndices);
+	}
+
+	/** Helper method: Determines the indices corresponding to the given field names.
+	 * 
+	 * @param fb the fact base
+	 * @param fields a list of field names
+	 * @return a list of corresponding field indices as an array
+	 * @throws ExtensionException if a field name is invalid
+	 */
+	private static int[] getFieldIndices(FactBase fb, LogoList fields) throws ExtensionException {
+		int[] ix = new int[fields.size()];
+		int j = 0;
+		for (Iterator<Object> fi = fields.javaIterator(); fi.hasNext(); ) {
+			ix[j] = fb.requireFieldIndex(fi.next().toString());
+			j++;
+		}
+		return ix;
+	}
+
+}
@@ -0,0 +1,510 @@
+/*
+ * Query.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.core.LogoList;
+
+/** This class implements a declarative query on a fact base: a conjunction of predicates, each comparing one field with a 
+ * given value. Unlike {@link Retrieval}, a query never calls back into NetLogo. It is answered from the indexes as far as 
+ * possible:
+ * <ul>
+ * <li>equality predicates on fields with a hash index (or on combinations of fields with a composite index) give posting lists,
+ * which are intersected starting with the smallest one,</li>
+ * <li>if there are no such predicates, comparisons on a field with a sorted index give a range of candidates,</li>
+ * <li>only if there is no index to use at all, every fact is a candidate.</li>
+ * </ul>
+ * All candidates are then checked against all predicates using the stored field values. 
+ * 
+ * Equality follows NetLogo's <code>=</code>, so 0 and -0 are equal. The comparisons <code>&lt; &lt;= &gt; &gt;=</code> apply to
+ * numbers and to strings; a fact whose value cannot be compared with the given value does not match.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class Query {
+
+	/** Comparison operators */
+	static final int EQ = 0, NE = 1, LT = 2, LE = 3, GT = 4, GE = 5;
+	/** The names of the comparison operators, indexed by operator */
+	private static final String[] OPERATORS = {"=", "!=", "<", "<=", ">", ">="};
+
+	/** One predicate of the query: field, operator and value */
+	private static final class Predicate {
+		final int field;
+		final int op;
+		final Object value;
+		/** Whether the value is a number, which can be compared with a column of numbers without boxing */
+		final boolean numeric;
+		/** The value as a primitive double (if it is a number) */
+		final double number;
+
+		Predicate(int field, int op, Object value) {
+			this.field = field;
+			this.op = op;
+			this.value = value;
+			this.numeric = value instanceof Double;
+			this.number = numeric ? (Double)value : 0.0;
+		}
+	}
+
+	/** The fact base to be queried */
+	private final FactBase fb;
+	/** The predicates, all of which have to be satisfied */
+	private final List<Predicate> predicates = new ArrayList<Predicate>();
+	/** Whether the predicates are the whole condition (and not just implied by it, see {@link QueryPlanner}) */
+	private boolean exact = true;
+	/** Returned by {@link #pick(Random)} if no fact can be picked without checking the candidates */
+	static final int NOT_INDEXED = -2;
+	/** The IDs of the matching facts as determined by {@link #countPickable()} (null if all facts match) */
+	private PostingList pickable;
+
+	/** Creates a query without predicates (matching all facts) on the given fact base.
+	 *
+	 * @param fb the fact base
+	 */
+	Query(FactBase fb) {
+		this.fb = fb;
+	}
+
+	/** Creates a query from a list of clauses of the form <code>[field-name operator value]</code>, 
+	 * e.g. <code>[["person" "=" x] ["time" "&lt;=" t]]</code>.
+	 *
+	 * @param fb the fact base
+	 * @param clauses the list of clauses
+	 * @return the query
+	 * @throws ExtensionException if any of the clauses are invalid
+	 */
+	static Query parse(FactBase fb, LogoList clauses) throws ExtensionException {
+		Query query = new Query(fb);
+		for (Object clause : clauses.javaIterable()) {
+			if (!(clause instanceof LogoList) || ((LogoList)clause).size() != 3) {
+				throw new ExtensionException("not a clause of the form [field-name operator value]: " + Dump.logoObject(clause));
+			}
+			LogoList c = (LogoList)clause;
+			query.add(fb.requireFieldIndex(c.get(0).toString()), operator(c.get(1).toString()), c.get(2));
+		}
+		return query;
+	}
+
+	/** Returns the operator with the given name.
+	 *
+	 * @param name one of <code>= != &lt; &lt;= &gt; &gt;=</code>
+	 * @return the operator
+	 * @throws ExtensionException if there is no such operator
+	 */
+	static int operator(String name) throws ExtensionException {
+		int op = Arrays.asList(OPERATORS).indexOf(name);
+		if (op < 0) {
+			throw new ExtensionException("unknown operator: " + name + " (use one of " + Arrays.toString(OPERATORS) + ")");
+		}
+		return op;
+	}
+
+	/** Adds a predicate to this query.
+	 *
+	 * @param field the index of the field
+	 * @param op the operator
+	 * @param value the value the field is compared with
+	 */
+	void add(int field, int op, Object value) {
+		predicates.add(new Predicate(field, op, value));
+	}
+
+	/** Marks whether the predicates of this query are the whole condition of a retrieval, so that the facts satisfying them
+	 * can be picked or counted from the indexes without running the task. Queries are exact unless marked otherwise.
+	 *
+	 * @param exact true, if the predicates are the whole condition; false, if they are only implied by it
+	 */
+	void setExact(boolean exact) {
+		this.exact = exact;
+	}
+
+	/** Picks a random fact satisfying this exact query directly from the indexes, each with the same probability. This is
+	 * possible if the query has no predicates (any fact will do) or if all predicates are equalities answered by the same 
+	 * index; then it takes constant time (for posting lists in the array representation).
+	 *
+	 * @param rng the random number generator to use
+	 * @return the ID of the fact picked, -1 if there are no matching facts, or {@link #NOT_INDEXED} if the facts cannot be
+	 * picked this way
+	 */
+	int pick(Random rng) {
+		int count = countPickable();
+		if (count == NOT_INDEXED) {
+			return NOT_INDEXED;
+		}
+		return (count == 0) ? -1 : getPickable(rng.nextInt(count));
+	}
+
+	/** Returns the number of facts satisfying this exact query if they can be picked from the indexes directly (see 
+	 * {@link #pick(Random)}). Together with {@link #getPickable(int)} this allows picking several facts at random.
+	 *
+	 * @return the number of matching facts, or {@link #NOT_INDEXED} if the facts cannot be picked from the indexes
+	 */
+	int countPickable() {
+		if (!exact) {
+			return NOT_INDEXED;
+		}
+		if (predicates.isEmpty()) {
+			pickable = null;
+			return fb.size();
+		}
+		for (Predicate p : predicates) {
+			if (!isIndexableEquality(p)) {
+				return NOT_INDEXED;
+			}
+		}
+		if (predicates.size() == 1 && fb.isIndexed(predicates.get(0).field)) {
+			pickable = fb.getField(predicates.get(0).field).get(Column.key(predicates.get(0).value));
+		}
+		else {
+			CompositeIndex index = findCoveringIndex();
+			if (index == null) {
+				return NOT_INDEXED;
+			}
+			int[] fields = index.getFields();
+			Object[] values = new Object[fields.length];
+			for (int i = 0; i < fields.length; i++) {
+				values[i] = predicates.get(findEquality(fields[i])).value;
+			}
+			pickable = index.get(values);
+		}
+		return (pickable == null) ? 0 : pickable.size();
+	}
+
+	/** Returns the ID of the k-th fact satisfying this exact query. Must only be called after {@link #countPickable()} has
+	 * returned a number larger than k.
+	 *
+	 * @param k the position of the fact among the matching facts
+	 * @return the fact ID
+	 */
+	int getPickable(int k) {
+		return (pickable == null) ? fb.getLiveID(k) : pickable.get(k);
+	}
+
+	/** Returns true if this query has no predicates.
+	 *
+	 * @return true, if every fact matches; otherwise, false
+	 */
+	boolean isEmpty() {
+		return predicates.isEmpty();
+	}
+
+	/** Finds the IDs of all facts satisfying this query.
+	 *
+	 * @return the matching fact IDs in ascending order
+	 */
+	int[] execute() {
+		int[] ids = candidates();
+		int count = 0;
+		if (ids == null) {
+			ids = new int[fb.size()];
+			for (int id = fb.firstLiveID(); id >= 0; id = fb.nextLiveID(id)) {
+				if (matches(id)) {
+					ids[count++] = id;
+				}
+			}
+		}
+		else {
+			for (int id : ids) {
+				if (matches(id)) {
+					ids[count++] = id;
+				}
+			}
+		}
+		return Arrays.copyOf(ids, count);
+	}
+
+	/** Counts the facts satisfying this query. If the query can be answered by one index, this is the size of the posting
+	 * list (or of the fact base), so no fact is looked at; otherwise, the candidates are checked.
+	 *
+	 * @return the number of matching facts
+	 */
+	int count() {
+		int count = countPickable();
+		if (count != NOT_INDEXED) {
+			return count;
+		}
+		count = 0;
+		int[] ids = candidates();
+		if (ids == null) {
+			for (int id = fb.firstLiveID(); id >= 0; id = fb.nextLiveID(id)) {
+				if (matches(id)) {
+					count++;
+				}
+			}
+		}
+		else {
+			for (int id : ids) {
+				if (matches(id)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/** Determines the candidates for this query from the indexes. Every fact satisfying the query is a candidate, but
+	 * candidates still have to be checked with {@link #matches(int)}.
+	 *
+	 * @return the candidate IDs in ascending order, or null if no index can be used (then every fact is a candidate)
+	 */
+	int[] candidates() {
+		List<PostingList> idLists = new ArrayList<PostingList>();
+		// equality predicates answered by hash indexes
+		boolean[] covered = new boolean[predicates.size()];
+		for (CompositeIndex index : fb.getCompositeIndexes()) {
+			int[] fields = index.getFields();
+			Object[] values = new Object[fields.length];
+			int[] used = new int[fields.length];
+			boolean usable = true;
+			for (int i = 0; i < fields.length && usable; i++) {
+				used[i] = findEquality(fields[i]);
+				usable = used[i] >= 0;
+				if (usable) {
+					values[i] = predicates.get(used[i]).value;
+				}
+			}
+			if (usable) {
+				PostingList idList = index.get(values);
+				if (idList == null) {
+					return new int[0];
+				}
+				idLists.add(idList);
+				for (int i : used) {
+					covered[i] = true;
+				}
+			}
+		}
+		for (int i = 0; i < predicates.size(); i++) {
+			Predicate p = predicates.get(i);
+			if (!covered[i] && isIndexableEquality(p) && fb.isIndexed(p.field)) {
+				PostingList idList = fb.getField(p.field).get(Column.key(p.value));
+				if (idList == null) {
+					return new int[0];
+				}
+				idLists.add(idList);
+			}
+		}
+		if (!idLists.isEmpty()) {
+			// most selective first
+			Collections.sort(idLists, new Comparator<PostingList>() {
+				public int compare(PostingList a, PostingList b) {
+					return Integer.compare(a.size(), b.size());
+				}
+			});
+			PostingList result = idLists.get(0);
+			for (int i = 1; i < idLists.size() && !result.isEmpty(); i++) {
+				result = result.intersect(idLists.get(i));
+			}
+			return result.toArray();
+		}
+		// numeric comparisons answered by a sorted index: combine all bounds on the first such field
+		for (Predicate p : predicates) {
+			if (p.op >= LT && p.value instanceof Double && fb.isSortIndexed(p.field)) {
+				return rangeCandidates(p.field);
+			}
+		}
+		return null;
+	}
+
+	/** Checks if the fact with the given ID satisfies all predicates of this query.
+	 *
+	 * @param id the fact ID (of a fact that has not been retracted)
+	 * @return true, if the fact matches; otherwise, false
+	 */
+	boolean matches(int id) {
+		for (int i = 0; i < predicates.size(); i++) {
+			Predicate p = predicates.get(i);
+			boolean holds;
+			if (p.numeric && fb.isNumeric(p.field)) {
+				// numbers are compared without boxing them (e.g. timestamps, which are too large for the shared boxes)
+				holds = compare(fb.getDouble(id, p.field), p.op, p.number);
+			}
+			else {
+				holds = compare(fb.getValue(id, p.field), p.op, p.value);
+			}
+			if (!holds) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Checks if the given query has the same predicates as this query (with equal values) and is exact if this query is.
+	 *
+	 * @param other another query on the same fact base
+	 * @return true, if both queries are satisfied by the same facts; otherwise, false
+	 */
+	boolean hasSamePredicates(Query other) {
+		if (other.exact != exact || other.predicates.size() != predicates.size()) {
+			return false;
+		}
+		for (int i = 0; i < predicates.size(); i++) {
+			Predicate p = predicates.get(i);
+			Predicate q = other.predicates.get(i);
+			if (p.field != q.field || p.op != q.op || !Column.key(p.value).equals(Column.key(q.value))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Compares a stored value with a given value.
+	 *
+	 * @param stored the value of a fact
+	 * @param op the operator
+	 * @param value the value it is compared with
+	 * @return true, if <code>stored op value</code> holds; otherwise, false
+	 */
+	static boolean compare(Object stored, int op, Object value) {
+		if (op == EQ || op == NE) {
+			boolean equal = (stored instanceof Double && value instanceof Double) 
+					? ((Double)stored).doubleValue() == ((Double)value).doubleValue()
+					: stored.equals(value);
+			return equal == (op == EQ);
+		}
+		int c;
+		if (stored instanceof Double && value instanceof Double) {
+			c = Double.compare((Double)stored + 0.0, (Double)value + 0.0);
+		}
+		else if (stored instanceof String && value instanceof String) {
+			c = ((String)stored).compareTo((String)value);
+		}
+		else {
+			return false;
+		}
+		switch (op) {
+		case LT: return c < 0;
+		case LE: return c <= 0;
+		case GT: return c > 0;
+		default: return c >= 0;
+		}
+	}
+
+	/** Compares a stored number with a given number, with the same results as {@link #compare(Object, int, Object)} for
+	 * two numbers.
+	 *
+	 * @param stored the value of a fact
+	 * @param op the operator
+	 * @param value the number it is compared with
+	 * @return true, if <code>stored op value</code> holds; otherwise, false
+	 */
+	static boolean compare(double stored, int op, double value) {
+		switch (op) {
+		case EQ: return stored == value;
+		case NE: return stored != value;
+		default: break;
+		}
+		int c = Double.compare(stored + 0.0, value + 0.0);
+		switch (op) {
+		case LT: return c < 0;
+		case LE: return c <= 0;
+		case GT: return c > 0;
+		default: return c >= 0;
+		}
+	}
+
+	/** Helper method: finds a composite index over exactly the fields of the predicates (which have to be indexable equalities
+	 * on different fields).
+	 *
+	 * @return the index, or null if there is none
+	 */
+	private CompositeIndex findCoveringIndex() {
+		int[] fields = new int[predicates.size()];
+		for (int i = 0; i < fields.length; i++) {
+			fields[i] = predicates.get(i).field;
+		}
+		Arrays.sort(fields);
+		for (CompositeIndex index : fb.getCompositeIndexes()) {
+			if (Arrays.equals(index.getFields(), fields)) {
+				return index;
+			}
+		}
+		return null;
+	}
+
+	/** Helper method: checks if the given predicate can be answered by a hash index.
+	 *
+	 * @param p a predicate
+	 * @return true, if it is an equality (the indexes treat 0 and -0 as equal, see {@link Column#key(Object)})
+	 */
+	private static boolean isIndexableEquality(Predicate p) {
+		return p.op == EQ;
+	}
+
+	/** Helper method: finds an equality predicate on the given field that can be answered by a hash index.
+	 *
+	 * @param field the index of a field
+	 * @return the position of the predicate, or -1 if there is none
+	 */
+	private int findEquality(int field) {
+		for (int i = 0; i < predicates.size(); i++) {
+			Predicate p = predicates.get(i);
+			if (p.field == field && isIndexableEquality(p)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** Helper method: determines the candidates from the sorted index of the given field, using all numeric comparisons on it.
+	 *
+	 * @param field the index of a field with a sorted index
+	 * @return the candidate IDs in ascending order
+	 */
+	private int[] rangeCandidates(int field) {
+		double low = Double.NEGATIVE_INFINITY, high = Double.POSITIVE_INFINITY;
+		boolean lowInclusive = true, highInclusive = true;
+		for (Predicate p : predicates) {
+			if (p.field != field || p.op < LT || !(p.value instanceof Double)) {
+				continue;
+			}
+			double v = (Double)p.value;
+			if (p.op == LT || p.op == LE) {
+				if (v < high || (v == high && p.op == LT)) {
+					high = v;
+					highInclusive = (p.op == LE);
+				}
+			}
+			else if (v > low || (v == low && p.op == GT)) {
+				low = v;
+				lowInclusive = (p.op == GE);
+			}
+		}
+		return fb.rangeIDs(field, low, lowInclusive, high, highInclusive);
+	}
+
+}
@@ -0,0 +1,260 @@
+/*
+ * QueryPlanner.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.nlogo.api.Context;
+import org.nlogo.api.LogoException;
+import org.nlogo.core.Let;
+import org.nlogo.nvm.AnonymousReporter;
+import org.nlogo.nvm.ExtensionContext;
+import org.nlogo.nvm.Reporter;
+
+/** This class derives a {@link Query} from the condition task of a retrieval, so that the facts to run the task on can be
+ * narrowed down using the indexes of the fact base. It inspects the compiled body of the task and recognises conjuncts 
+ * (combined with <code>and</code>) which compare a formal argument of the task with a value that cannot change during the 
+ * retrieval, e.g. <code>[[p s] -&gt; p = self and s = 2 and other-stuff]</code>. Such values are constants, <code>self</code> 
+ * and <code>ticks</code>.
+ * 
+ * Everything else in the task is ignored, which is safe since the task is still run on every candidate: the query only 
+ * has to be satisfied by every fact the task accepts. Therefore the retrieval results are identical to a full scan. 
+ * Comparisons other than equality are only used for fields that contain nothing but numbers and values that are numbers, 
+ * where they cannot fail. The only exception are exact queries (see {@link #bind(Context, boolean)}), for which one-of, 
+ * n-of and count take the matching facts from an index without running the task; such queries consist of equalities only, 
+ * which give the same result as the task for every fact.
+ * 
+ * Inspecting the task is done once (see {@link PreparedRetrieval}); the values are filled in for every retrieval by
+ * {@link #bind(Context)}, since e.g. <code>self</code> differs from call to call.
+ *
+ * @author Ruth Meyer
+ *
+ */
+class QueryPlanner {
+
+	/** The primitives comparing two values, with the operator each of them corresponds to */
+	private static final List<String> COMPARISONS = Arrays.asList("_equal", "_notequal", "_lessthan", "_lessorequal", "_greaterthan", "_greaterorequal");
+	private static final int[] OPERATORS = {Query.EQ, Query.NE, Query.LT, Query.LE, Query.GT, Query.GE};
+	/** The same operators with their operands swapped */
+	private static final int[] SWAPPED = {Query.EQ, Query.NE, Query.GT, Query.GE, Query.LT, Query.LE};
+	/** The primitives whose values cannot change during a retrieval */
+	private static final List<String> INVARIANTS = Arrays.asList("_constdouble", "_conststring", "_constboolean", "_self", "_ticks");
+
+	/** A comparison found in the task, with the reporter for the value still to be evaluated */
+	private static final class Comparison {
+		final int field;
+		final int op;
+		final Reporter value;
+		/** Whether the value is <code>ticks</code>, which can change during foreach */
+		final boolean ticks;
+
+		Comparison(int field, int op, Reporter value) {
+			this.field = field;
+			this.op = op;
+			this.value = value;
+			ticks = value.getClass().getSimpleName().equals("_ticks");
+		}
+	}
+
+	/** The fact base to be queried */
+	private final FactBase fb;
+	/** The names of the formal arguments of the task */
+	private final String[] formals;
+	/** The field corresponding to each formal argument */
+	private final int[] fieldIndices;
+	/** The comparisons found in the task */
+	private final List<Comparison> comparisons = new ArrayList<Comparison>();
+	/** Whether the task consists of nothing but the comparisons found */
+	private boolean complete = true;
+
+	/** Inspects the given condition task.
+	 *
+	 * @param fb the fact base
+	 * @param task the condition task
+	 * @param fieldIndices the field corresponding to each formal argument of the task
+	 */
+	QueryPlanner(FactBase fb, AnonymousReporter task, int[] fieldIndices) {
+		this.fb = fb;
+		this.fieldIndices = fieldIndices;
+		Let[] lets = task.formals();
+		formals = new String[lets.length];
+		for (int i = 0; i < lets.length; i++) {
+			formals[i] = lets[i].name();
+		}
+		try {
+			addConjuncts(task.body());
+		}
+		catch (RuntimeException e) {
+			// an unexpected shape of the compiled task: the comparisons found so far are still valid
+			complete = false;
+		}
+	}
+
+	/** Creates the query for one retrieval (see {@link #bind(Context, boolean)}).
+	 *
+	 * @param context the NetLogo context the task is run in
+	 * @return the query
+	 */
+	Query bind(Context context) {
+		return bind(context, true);
+	}
+
+	/** Creates the query for one retrieval. The query is satisfied by every fact the task accepts; it is empty 
+	 * (satisfied by all facts) if nothing in the task can be used. If the task consists of nothing but the comparisons in the
+	 * query, the query is exact, that means the task would accept exactly the facts matching the query.
+	 *
+	 * @param context the NetLogo context the task is run in
+	 * @param withTicks false, to leave out the comparisons with <code>ticks</code> (for foreach, whose command may advance the ticks)
+	 * @return the query
+	 */
+	Query bind(Context context, boolean withTicks) {
+		Query query = new Query(fb);
+		boolean exact = complete;
+		for (Comparison c : comparisons) {
+			boolean ordering = c.op != Query.EQ && c.op != Query.NE;
+			if (c.ticks && !withTicks) {
+				exact = false;
+				continue;
+			}
+			if (ordering && !fb.isNumeric(c.field)) {
+				// comparing values which are not numbers might raise an error in the task, which must not be skipped
+				exact = false;
+				continue;
+			}
+			Object value = valueOf(c.value, context);
+			// the same holds for a value which is not a number, e.g. self
+			if (value != null && (!ordering || value instanceof Double)) {
+				query.add(c.field, c.op, value);
+			}
+			else {
+				exact = false;
+			}
+		}
+		query.setExact(exact);
+		return query;
+	}
+
+	/** Helper method: adds the comparisons found in the given reporter, which is known to be true for every fact the task accepts.
+	 *
+	 * @param r a reporter from the body of the task
+	 */
+	private void addConjuncts(Reporter r) {
+		String prim = r.getClass().getSimpleName();
+		if (prim.equals("_and")) {
+			addConjuncts(r.args[0]);
+			addConjuncts(r.args[1]);
+			return;
+		}
+		if (prim.equals("_constboolean") && isTrue(r)) {
+			// always true: nothing to add
+			return;
+		}
+		int c = COMPARISONS.indexOf(prim);
+		if (c < 0) {
+			complete = false;
+			return;
+		}
+		int formal = formalOf(r.args[0]);
+		int op = OPERATORS[c];
+		Reporter other = r.args[1];
+		if (formal < 0) {
+			formal = formalOf(r.args[1]);
+			op = SWAPPED[c];
+			other = r.args[0];
+		}
+		if (formal >= 0 && INVARIANTS.contains(other.getClass().getSimpleName())) {
+			comparisons.add(new Comparison(fieldIndices[formal], op, other));
+		}
+		else {
+			complete = false;
+		}
+	}
+
+	/** Helper method: checks if the given constant is true.
+	 *
+	 * @param r a boolean constant
+	 * @return true, if its value is true; otherwise, false
+	 */
+	private static boolean isTrue(Reporter r) {
+		try {
+			// a constant does not need a context
+			return Boolean.TRUE.equals(r.report(null));
+		}
+		catch (LogoException e) {
+			return false;
+		}
+	}
+
+	/** Helper method: determines which formal argument of the task the given reporter reads.
+	 *
+	 * @param r a reporter from the body of the task
+	 * @return the position of the formal argument, or -1 if the reporter is not a formal argument
+	 */
+	private int formalOf(Reporter r) {
+		if (!r.getClass().getSimpleName().equals("_lambdavariable")) {
+			return -1;
+		}
+		try {
+			Method varName = r.getClass().getMethod("varName");
+			Object name = varName.invoke(r);
+			for (int i = 0; i < formals.length; i++) {
+				if (formals[i].equalsIgnoreCase(String.valueOf(name))) {
+					return i;
+				}
+			}
+		}
+		catch (ReflectiveOperationException e) {
+			// not the kind of variable we know
+		}
+		return -1;
+	}
+
+	/** Helper method: evaluates a reporter whose value cannot change during the retrieval.
+	 *
+	 * @param r one of the {@link #INVARIANTS}
+	 * @param context the NetLogo context the task is run in
+	 * @return its value, or null if it cannot be evaluated here
+	 */
+	private static Object valueOf(Reporter r, Context context) {
+		if (r.getClass().getSimpleName().equals("_self")) {
+			return context.getAgent();
+		}
+		if (!(context instanceof ExtensionContext)) {
+			return null;
+		}
+		try {
+			return r.report(((ExtensionContext)context).nvmContext());
+		}
+		catch (LogoException e) {
+			return null;
+		}
+	}
+
+}
@@ -26,6 +26,12 @@
 
 package org.cfpm.factbaseExtension;
 
+import java.util.Arrays;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.nlogo.api.AnonymousCommand;
 import org.nlogo.api.Argument;
 import org.nlogo.api.Context;
 import org.nlogo.api.Dump;
@@ -35,11 +41,8 @@ import org.nlogo.api.LogoListBuilder;
 import org.nlogo.core.LogoList;
 import org.nlogo.nvm.AnonymousReporter;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-
 /** This class provides the necessary functionality for retrieval from a fact base. It is used by several of the primitives
- * (retrieve, retrieve-to, exists?, retract-all, one-of, n-of).
+ * (retrieve, retrieve-to, exists?, retract-all, one-of, n-of, count, foreach, retrieve-sorted and the aggregates like sum).
  * 
  * @author Ruth Meyer
  *
@@ -58,6 +61,28 @@ public class Retrieval {
 	private Context context;
 	/** Indices of the output fields (if specified) */
 	private int[] outFIndices;
+	/** Planner deriving the query from the task, kept to bind the query again (see {@link #forEach(AnonymousCommand)} and {@link #retrieveNext(int, Context)}) */
+	private QueryPlanner planner;
+	/** Query derived from the task, used to narrow down the facts to be checked */
+	private Query query;
+	/** IDs of the facts the task has to be run on, determined from the indexes (null if all facts have to be checked) */
+	private int[] candidates;
+	/** Whether {@link #candidates} has been determined yet */
+	private boolean candidatesKnown = false;
+	/** Position of the current fact in {@link #candidates} */
+	private int candidatePos;
+	/** The ID of the last fact visited by {@link #retrieveNext(int, Context)} */
+	private int cursorID = CURSOR_START;
+	/** Value of {@link #cursorID} before the first call of {@link #retrieveNext(int, Context)} */
+	private static final int CURSOR_START = -1;
+	/** Whether {@link #retrieveNext(int, Context)} has visited all candidates */
+	private boolean cursorDone = false;
+	/** Whether the iteration of {@link #forEach(AnonymousCommand)} has been stopped */
+	private boolean stopped;
+	/** The number of facts satisfying the condition, as counted by {@link #retrieveN(int)} or {@link #sum(int)} */
+	private int matchCount;
+	/** The values of the condition fields of the current fact, passed to the task (reused for every fact) */
+	private Object[] values;
 	
 	/** Constructor of the retrieval class. It is passed the arguments and the context directly from the primitive calling it,
 	 * then checks and stores these arguments plus the context for later use in the actual retrieval methods.
@@ -86,30 +111,76 @@ public class Retrieval {
 			throw new ExtensionException ("not a list: " + Dump.logoObject(arg2));
 		}
 		fields = (LogoList)arg2;
-		// check that there's a field for every formal argument to the task
-		if (task.formals().length != fields.size()) {
-			throw new ExtensionException("the condition task has " + task.formals().length + " arguments but there are " + fields.size() + " fields specified to match them");
-		}
-		// determine indices of fields
-		fIndices = getFieldIndices(fields);
-		FactBaseExtension.writeToNetLogo("fieldIndices = " + printArray(fIndices), false, context);
-		// store the context
-		this.context = context;
 		// if there is a fourth argument, that's either the number for n-of or the list of field names specifying the output format
+		LogoList outFields = null;
 		if (args.length >= 4) {
 			Object arg3 = args[3].get();
-			if (arg3 instanceof Number) {
-				// it's the number for n-of --> do nothing here
+			if (arg3 instanceof Number || arg3 instanceof String) {
+				// it's the number for n-of or the field to be aggregated --> do nothing here
 			}
 			else {
 				if (! (arg3 instanceof LogoList)) {
 					throw new ExtensionException ("not a list: " + Dump.logoObject(arg3));
 				}
-				LogoList outFields = (LogoList)arg3;
-				outFIndices = getFieldIndices(outFields);
+				outFields = (LogoList)arg3;
+			}
+		}
+		// field indices and the analysis of the task are cached by the fact base
+		PreparedRetrieval prepared = fb.prepareRetrieval(task, fields, outFields);
+		fIndices = prepared.fieldIndices;
+		outFIndices = prepared.outFieldIndices;
+		values = new Object[fIndices.length];
+		// store the context
+		this.context = context;
+		// the query narrows down the facts to be checked, as far as the condition allows
+		planner = prepared.planner;
+		query = planner.bind(context);
+		if (FactBaseExtension.isTracing()) {
+			findCandidates();
+			FactBaseExtension.writeToNetLogo("fieldIndices = " + printArray(fIndices), false, context);
+			if (outFIndices != null) {
 				FactBaseExtension.writeToNetLogo("outFieldIndices = " + printArray(outFIndices), false, context);
 			}
+			FactBaseExtension.writeToNetLogo("number of candidates = " + (candidates == null ? "all" : candidates.length), false, context);
+		}
+	}
+	
+	/** Helper method: determines the candidates from the indexes, unless this has been done already. This is put off until
+	 * the facts are actually iterated over, which is not necessary if a fact can be picked from the indexes directly.
+	 * 
+	 */
+	private void findCandidates() {
+		if (!candidatesKnown) {
+			candidates = query.candidates();
+			candidatesKnown = true;
+		}
+	}
+	
+	/** Returns the ID of the first fact the task has to be run on, or -1 if there is none. Together with {@link #nextCandidate(int)}
+	 * this iterates over the candidates in ID order.
+	 * 
+	 * @return the first candidate ID (or -1)
+	 */
+	private int firstCandidate() {
+		findCandidates();
+		candidatePos = 0;
+		if (candidates == null) {
+			return fb.firstLiveID();
+		}
+		return (candidates.length > 0) ? candidates[0] : -1;
+	}
+	
+	/** Returns the ID of the next fact the task has to be run on, or -1 if there is none.
+	 * 
+	 * @param id the current candidate ID
+	 * @return the next candidate ID (or -1)
+	 */
+	private int nextCandidate(int id) {
+		if (candidates == null) {
+			return fb.nextLiveID(id);
 		}
+		candidatePos++;
+		return (candidatePos < candidates.length) ? candidates[candidatePos] : -1;
 	}
 	
 	/** Finds all facts that satisfy the condition as specified in {@link #task} and {@link #fields}.
@@ -119,47 +190,146 @@ public class Retrieval {
 	 * @throws LogoException
 	 */
 	LogoList retrieveAll() throws ExtensionException, LogoException {
+		return retrieveAll(0, Integer.MAX_VALUE);
+	}
+	
+	/** Finds the facts that satisfy the condition as specified in {@link #task} and {@link #fields}, skipping the first
+	 * offset of them and stopping as soon as limit facts have been found.
+	 * 
+	 * @param offset the number of matching facts to be skipped
+	 * @param limit the maximum number of facts wanted
+	 * @return a list of up to limit facts satisfying the condition
+	 * @throws ExtensionException
+	 * @throws LogoException
+	 */
+	LogoList retrieveAll(int offset, int limit) throws ExtensionException, LogoException {
 		// now for every fact (specifically: every value of the defined fields) we have to run the reporter task
 		// if it evaluates to TRUE, the fact has to be stored in the results list
 		LogoListBuilder results = new LogoListBuilder();
-		for (int i = 0; i < fb.size(); i++) {
-			// need to skip deleted entries
-			if (!fb.isRetracted(i)) {
-				LogoList fact = fb.retrieveFact(i);
-				FactBaseExtension.writeToNetLogo("checking fact: " + fb.printFact(fact), false, context);
-				Object[] values = getValuesOf(fact, fIndices);
-				FactBaseExtension.writeToNetLogo("field values are: " + printArray(values), false, context);
-				// run the reporter task
-				Object isValidFact = task.report(context, values);
-				FactBaseExtension.writeToNetLogo("task result is: " + isValidFact, false, context);
-				if (isValidFact != null && (Boolean)isValidFact) {
-					results.add(filter(fact));
+		int count = 0;
+		// iterating over the candidates skips deleted entries and facts ruled out by the indexes
+		for (int i = firstCandidate(); i >= 0 && count < limit; i = nextCandidate(i)) {
+			if (satisfiesCondition(i)) {
+				if (offset > 0) {
+					offset--;
+				}
+				else {
+					results.add(filter(i));
+					count++;
 				}
 			}
 		}
 		return results.toLogoList();			
 	}
 	
+	/** Helper method for the primitives with an optional limit and offset (e.g. {@link FactBaseRetrieve}): reads the argument
+	 * at the given position, which has to be a number of facts, if it is there.
+	 * 
+	 * @param args the arguments to the primitive
+	 * @param pos the position of the argument
+	 * @param dfault the value if there is no such argument
+	 * @param what the meaning of the argument, for the error message
+	 * @return the number
+	 * @throws ExtensionException if the argument is not a number or negative
+	 * @throws LogoException
+	 */
+	static int optionalCount(Argument[] args, int pos, int dfault, String what) throws ExtensionException, LogoException {
+		if (args.length <= pos) {
+			return dfault;
+		}
+		int n = args[pos].getIntValue();
+		if (n < 0) {
+			throw new ExtensionException("the " + what + " has to be at least 0, not " + n);
+		}
+		return n;
+	}
+	
+	/** Finds the next k facts that satisfy the condition as specified in {@link #task} and {@link #fields}, continuing after
+	 * the last fact visited by the previous call (see {@link FactBaseCursor}). Facts retracted in between are skipped; the 
+	 * candidates determined from the indexes are kept, so facts asserted in between may be missed.
+	 * 
+	 * The condition is evaluated in the given context, that means for the agent calling next-page and the current ticks. The 
+	 * query is bound to this context anew, and if that gives different values than for the previous page (e.g. for 
+	 * <code>self</code> or <code>ticks</code>), the candidates are determined again, so that the query and the task always
+	 * agree.
+	 * 
+	 * @param k the maximum number of facts wanted
+	 * @param context the NetLogo context of this call
+	 * @return a list of up to k facts satisfying the condition (empty if there are no more)
+	 * @throws ExtensionException
+	 * @throws LogoException
+	 */
+	LogoList retrieveNext(int k, Context context) throws ExtensionException, LogoException {
+		LogoListBuilder results = new LogoListBuilder();
+		int count = 0;
+		if (cursorDone || k <= 0) {
+			return results.toLogoList();
+		}
+		rebind(context);
+		int i = candidateAfter(cursorID);
+		while (i >= 0 && count < k) {
+			if (!fb.isRetracted(i) && satisfiesCondition(i)) {
+				results.add(filter(i));
+				count++;
+			}
+			cursorID = i;
+			if (count < k) {
+				i = nextCandidate(i);
+			}
+		}
+		cursorDone = (i < 0);
+		return results.toLogoList();
+	}
+	
+	
+	/** Helper method for {@link #retrieveNext(int, Context)}: binds the query to the given context. The candidates are only 
+	 * determined again if the query has changed.
+	 * 
+	 * @param context the NetLogo context the task is run in from now on
+	 */
+	private void rebind(Context context) {
+		this.context = context;
+		Query bound = planner.bind(context);
+		if (!bound.hasSamePredicates(query)) {
+			query = bound;
+			candidatesKnown = false;
+		}
+	}
 	
-	/** Retains only the specified output fields (stored as indices {@link #outFIndices}) from the given fact.
+	/** Helper method for {@link #retrieveNext(int, Context)}: returns the first candidate with an ID larger than the given 
+	 * one, or -1 if there is none. The position is found by the ID alone, so the candidates may have been determined anew.
 	 * 
-	 * @param fact the fact to be filtered
+	 * @param id a fact ID (or {@link #CURSOR_START})
+	 * @return the next candidate ID (or -1)
+	 */
+	private int candidateAfter(int id) {
+		findCandidates();
+		if (candidates == null) {
+			return fb.nextLiveID(id);
+		}
+		int pos = Arrays.binarySearch(candidates, id + 1);
+		candidatePos = (pos >= 0) ? pos : -(pos + 1);
+		return (candidatePos < candidates.length) ? candidates[candidatePos] : -1;
+	}
+	
+	/** Retains only the specified output fields (stored as indices {@link #outFIndices}) from the fact with the given ID.
+	 * 
+	 * @param factID the ID of the fact to be filtered
 	 * @return the filtered fact, that means only those values of the given fact that correspond to the specified output fields
 	 * @throws ExtensionException an exception might occur during writing to NetLogo (in debugging phase)
 	 */
-	private LogoList filter(LogoList fact) throws ExtensionException {
+	private LogoList filter(int factID) throws ExtensionException {
 		// check if output "filter" applies, i.e. if outFIndices is set
 		if (outFIndices == null) {
-			// no filter -> do nothing
-			return fact;
+			// no filter -> the whole fact
+			return fb.getFact(factID);
 		}
-		// apply the filter
-		ArrayList<Object> filteredFact = new ArrayList<>();
-		for (int i : outFIndices) {
-			filteredFact.add(fact.get(i));
+		// apply the filter: only the columns of the output fields are read
+		LogoList result = fb.getFact(factID, outFIndices);
+		if (FactBaseExtension.isTracing()) {
+			FactBaseExtension.writeToNetLogo("filtered fact is: " + result, false, context);
 		}
-		FactBaseExtension.writeToNetLogo("filtered fact is: " + printArrayList(filteredFact), false, context);
-		return LogoList.fromJava(filteredFact);
+		return result;
 	}
 
 	/** Finds the first fact that satisfies the condition as specified in {@link #task} and {@link #fields}.
@@ -172,64 +342,392 @@ public class Retrieval {
 		// now for every fact (specifically: every value of the defined fields) we have to run the reporter task
 		// until it evaluates to TRUE, then we can abort the search and return the found fact
 		// otherwise we have to keep searching until we can return null when nothing matching is found
-		int i = 0;
+		// iterating over the candidates skips deleted entries and facts ruled out by the indexes
+		int i = firstCandidate();
 		LogoList firstFact = null;
-		while (firstFact == null && i < fb.size()) {
-			// need to skip deleted entries
-			if (!fb.isRetracted(i)) {
-				LogoList fact = fb.retrieveFact(i);
-				FactBaseExtension.writeToNetLogo("checking fact: " + fb.printFact(fact), false, context);
-				Object[] values = getValuesOf(fact, fIndices);
-				FactBaseExtension.writeToNetLogo("field values are: " + printArray(values), false, context);
-				// run the reporter task
-				Object isValidFact = task.report(context, values);
-				FactBaseExtension.writeToNetLogo("task result is: " + isValidFact, false, context);
-				if (isValidFact != null && (Boolean)isValidFact) {
-					firstFact = fact;
-				}
+		while (firstFact == null && i >= 0) {
+			if (satisfiesCondition(i)) {
+				firstFact = fb.getFact(i);
 			}
-			i++;						
+			i = nextCandidate(i);
 		}
 		return firstFact;
 	}
 	
-	/** Helper method: Retrieves the values of the specified fields of the given fact.
+	/** Finds the IDs of all facts that satisfy the condition as specified in {@link #task} and {@link #fields}. Used where the 
+	 * facts themselves are not needed, e.g. to retract them (see {@link FactBase#removeFacts(int[])}).
 	 * 
-	 * @param fact the given fact
-	 * @param fieldIndices the fields to be used (given as field indices)
-	 * @return the values corresponding to the specified fields as an array
+	 * @return the IDs of the facts satisfying the specified condition, in ascending order
+	 * @throws ExtensionException
+	 * @throws LogoException
 	 */
-	private Object[] getValuesOf(LogoList fact, int[] fieldIndices) {
-		// returns an object array ready to stick into a reporter task
-		Object[] values = new Object[fieldIndices.length];
-		for (int i = 0; i < fieldIndices.length; i++) {
-			values[i] = fact.get(fieldIndices[i]);
+	int[] retrieveIDs() throws ExtensionException, LogoException {
+		int[] ids = new int[16];
+		int count = 0;
+		for (int i = firstCandidate(); i >= 0; i = nextCandidate(i)) {
+			if (satisfiesCondition(i)) {
+				if (count == ids.length) {
+					ids = Arrays.copyOf(ids, count * 2);
+				}
+				ids[count++] = i;
+			}
 		}
-		return values;
+		return Arrays.copyOf(ids, count);
 	}
-
-	/** Helper method: Determines the indices corresponding to the given field names.
+	
+	/** Counts the facts that satisfy the condition as specified in {@link #task} and {@link #fields}, without building a list
+	 * of them. If the condition can be answered from the indexes alone, the count is taken from them without looking at any fact.
+	 * 
+	 * @return the number of facts satisfying the specified condition
+	 * @throws ExtensionException
+	 * @throws LogoException
+	 */
+	int count() throws ExtensionException, LogoException {
+		int count = query.countPickable();
+		if (count == Query.NOT_INDEXED) {
+			count = 0;
+			for (int i = firstCandidate(); i >= 0; i = nextCandidate(i)) {
+				if (satisfiesCondition(i)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+	
+	/** Runs the given command task for every fact that satisfies the condition as specified in {@link #task} and {@link #fields},
+	 * as soon as the fact is found, so no list of the matching facts is built. If output fields have been specified, their values
+	 * are passed to the command as separate arguments; otherwise, the whole fact is passed as one argument. 
+	 * 
+	 * The command may assert or retract facts: facts asserted meanwhile are not visited, facts retracted before they are reached
+	 * are skipped, and automatic compaction is put off until the iteration is finished. The iteration ends early if {@link #stop()}
+	 * is called (see {@link FactBaseStopForeach}).
+	 * 
+	 * @param command the command task to run for each matching fact
+	 * @throws ExtensionException
+	 * @throws LogoException
+	 */
+	void forEach(AnonymousCommand command) throws ExtensionException, LogoException {
+		// the command may advance the ticks, so comparisons with ticks must not narrow down the candidates
+		query = planner.bind(context, false);
+		candidatesKnown = false;
+		// facts asserted by the command get IDs from here on
+		int end = fb.getNextFactID();
+		Object[] arguments = new Object[(outFIndices == null) ? 1 : outFIndices.length];
+		stopped = false;
+		fb.beginIteration();
+		try {
+			for (int i = firstCandidate(); i >= 0 && i < end && !stopped; i = nextCandidate(i)) {
+				if (!fb.isRetracted(i) && satisfiesCondition(i)) {
+					if (outFIndices == null) {
+						arguments[0] = fb.getFact(i);
+					}
+					else {
+						loadValues(fb, i, outFIndices, arguments);
+					}
+					command.perform(context, arguments);
+				}
+			}
+		}
+		finally {
+			fb.endIteration();
+		}
+	}
+	
+	/** Stops the iteration of {@link #forEach(AnonymousCommand)} after the current fact.
+	 * 
+	 */
+	void stop() {
+		stopped = true;
+	}
+	
+	/** Finds the fact with the smallest or largest value in the given field among the facts that satisfy the condition as 
+	 * specified in {@link #task} and {@link #fields}. If several facts share this value, one of them is picked at random.
+	 * If the field has a sorted index and holds nothing but numbers, the values are visited in order and the search stops
+	 * at the first value with a matching fact; otherwise, all candidates are checked in a single pass.
+	 * 
+	 * @param field the index of the field
+	 * @param largest true, to find the largest value; false, to find the smallest value
+	 * @return the ID of the fact found, or -1 if there is no fact satisfying the condition
+	 * @throws ExtensionException if the field of a matching fact does not hold a number
+	 * @throws LogoException
+	 */
+	int retrieveExtreme(int field, boolean largest) throws ExtensionException, LogoException {
+		Random rng = FactBaseExtension.rng;
+		int picked = -1;
+		int ties = 0;
+		TreeMap<Double, PostingList> sortedField = fb.getSortedField(field);
+		if (sortedField != null && fb.isNumeric(field)) {
+			NavigableMap<Double, PostingList> ordered = largest ? sortedField.descendingMap() : sortedField;
+			for (PostingList idList : ordered.values()) {
+				for (int i = idList.first(); i >= 0; i = idList.next(i)) {
+					if (satisfiesCondition(i)) {
+						ties++;
+						if (rng.nextInt(ties) == 0) {
+							picked = i;
+						}
+					}
+				}
+				if (picked >= 0) {
+					break;
+				}
+			}
+			return picked;
+		}
+		double best = 0;
+		for (int i = firstCandidate(); i >= 0; i = nextCandidate(i)) {
+			if (satisfiesCondition(i)) {
+				double value = fb.getNumber(i, field);
+				if (picked < 0 || (largest ? value > best : value < best)) {
+					best = value;
+					picked = i;
+					ties = 1;
+				}
+				else if (value == best) {
+					// same value: each of the tied facts is kept with the same probability
+					ties++;
+					if (rng.nextInt(ties) == 0) {
+						picked = i;
+					}
+				}
+			}
+		}
+		return picked;
+	}
+	
+	/** Finds the first k facts that satisfy the condition as specified in {@link #task} and {@link #fields}, sorted by the 
+	 * values of the given field; facts with the same value are sorted in the order they were asserted. If the field has a sorted
+	 * index and holds nothing but numbers, the values are visited in order and the search stops once k matching facts are found;
+	 * otherwise, all candidates are checked in a single pass keeping the best k facts so far in a bounded heap (see {@link FactHeap}).
+	 * 
+	 * @param field the index of the field to sort by
+	 * @param descending true, to sort by descending values; false, to sort by ascending values
+	 * @param k the maximum number of facts wanted (Integer.MAX_VALUE for all)
+	 * @return a list of up to k matching facts, in sort order
+	 * @throws ExtensionException if the field of a matching fact does not hold a number
+	 * @throws LogoException
+	 */
+	LogoList retrieveSorted(int field, boolean descending, int k) throws ExtensionException, LogoException {
+		LogoListBuilder results = new LogoListBuilder();
+		if (k <= 0) {
+			return results.toLogoList();
+		}
+		TreeMap<Double, PostingList> sortedField = fb.getSortedField(field);
+		if (sortedField != null && fb.isNumeric(field)) {
+			NavigableMap<Double, PostingList> ordered = descending ? sortedField.descendingMap() : sortedField;
+			int count = 0;
+			for (PostingList idList : ordered.values()) {
+				for (int i = idList.first(); i >= 0 && count < k; i = idList.next(i)) {
+					if (satisfiesCondition(i)) {
+						results.add(fb.getFact(i));
+						count++;
+					}
+				}
+				if (count == k) {
+					break;
+				}
+			}
+			return results.toLogoList();
+		}
+		FactHeap heap = new FactHeap(k, descending);
+		for (int i = firstCandidate(); i >= 0; i = nextCandidate(i)) {
+			if (satisfiesCondition(i)) {
+				heap.offer(i, fb.getNumber(i, field));
+			}
+		}
+		for (int id : heap.toSortedIDs()) {
+			results.add(fb.getFact(id));
+		}
+		return results.toLogoList();
+	}
+	
+	/** Adds up the values of the given field of all facts that satisfy the condition as specified in {@link #task} and 
+	 * {@link #fields}, in a single pass without building a list. The number of facts added up can be obtained from 
+	 * {@link #getMatchCount()} afterwards.
+	 * 
+	 * @param field the index of the field
+	 * @return the sum (0 if there is no fact satisfying the condition)
+	 * @throws ExtensionException if the field of a matching fact does not hold a number
+	 * @throws LogoException
+	 */
+	double sum(int field) throws ExtensionException, LogoException {
+		double sum = 0;
+		matchCount = 0;
+		for (int i = firstCandidate(); i >= 0; i = nextCandidate(i)) {
+			if (satisfiesCondition(i)) {
+				sum += fb.getNumber(i, field);
+				matchCount++;
+			}
+		}
+		return sum;
+	}
+	
+	/** Picks a random fact that satisfies the condition as specified in {@link #task} and {@link #fields}, each of them with
+	 * the same probability. If the condition can be answered from the indexes alone, the fact is picked from them directly;
+	 * otherwise, the facts are checked in a single pass keeping one of the matching facts so far at random (reservoir sampling),
+	 * so no list of all matching facts is built.
+	 * 
+	 * @return a random fact satisfying the specified condition or null if there is no such fact
+	 * @throws ExtensionException
+	 * @throws LogoException
+	 */
+	LogoList retrieveOne() throws ExtensionException, LogoException {
+		int picked = query.pick(FactBaseExtension.rng);
+		if (picked == Query.NOT_INDEXED) {
+			picked = -1;
+			int matches = 0;
+			for (int i = firstCandidate(); i >= 0; i = nextCandidate(i)) {
+				if (satisfiesCondition(i)) {
+					// the k-th matching fact replaces the one kept so far with probability 1/k
+					matches++;
+					if (FactBaseExtension.rng.nextInt(matches) == 0) {
+						picked = i;
+					}
+				}
+			}
+		}
+		return (picked < 0) ? null : fb.getFact(picked);
+	}
+	
+	/** Picks n random facts that satisfy the condition as specified in {@link #task} and {@link #fields}, without repeats and
+	 * in random order. If the condition can be answered from the indexes alone, n positions among the matching facts are
+	 * drawn directly (Floyd's algorithm); otherwise, the facts are checked in a single pass keeping a random sample of n of
+	 * the matching facts so far (reservoir sampling). Either way, only n fact IDs are kept in memory. The number of matching
+	 * facts can be obtained from {@link #getMatchCount()} afterwards.
+	 * 
+	 * @param n the number of facts wanted
+	 * @return a list of n random facts satisfying the specified condition or null if there are less than n such facts
+	 * @throws ExtensionException
+	 * @throws LogoException
+	 */
+	LogoList retrieveN(int n) throws ExtensionException, LogoException {
+		Random rng = FactBaseExtension.rng;
+		int[] sample = new int[Math.max(n, 0)];
+		matchCount = query.countPickable();
+		if (matchCount != Query.NOT_INDEXED) {
+			if (matchCount < n) {
+				return null;
+			}
+			// each position j from m-n to m-1 adds either a new random position below j or, if that is taken, j itself
+			int[] positions = new int[Integer.highestOneBit(Math.max(n, 1)) * 4];
+			for (int j = matchCount - n; j < matchCount; j++) {
+				int k = rng.nextInt(j + 1);
+				if (!addPosition(positions, k)) {
+					k = j;
+					addPosition(positions, j);
+				}
+				sample[j - matchCount + n] = query.getPickable(k);
+			}
+		}
+		else {
+			matchCount = 0;
+			for (int i = firstCandidate(); i >= 0; i = nextCandidate(i)) {
+				if (satisfiesCondition(i)) {
+					// the k-th matching fact replaces a random one of the n kept so far with probability n/k
+					if (matchCount < n) {
+						sample[matchCount] = i;
+					}
+					else {
+						int k = rng.nextInt(matchCount + 1);
+						if (k < n) {
+							sample[k] = i;
+						}
+					}
+					matchCount++;
+				}
+			}
+			if (matchCount < n) {
+				return null;
+			}
+		}
+		// the sample is random, but not its order: shuffle
+		for (int i = n - 1; i > 0; i--) {
+			int k = rng.nextInt(i + 1);
+			int id = sample[i];
+			sample[i] = sample[k];
+			sample[k] = id;
+		}
+		LogoListBuilder results = new LogoListBuilder();
+		for (int id : sample) {
+			results.add(fb.getFact(id));
+		}
+		return results.toLogoList();
+	}
+	
+	/** Helper method for {@link #retrieveN(int)}: adds a position to the given set of positions, an open addressing hash
+	 * table of ints which stores every position plus one (0 marks a free slot). The table must be larger than the number of
+	 * positions added, and its size must be a power of two.
 	 * 
-	 * @param fields a list of field names
-	 * @return a list of corresponding field indices as an array
-	 * @throws ExtensionException if a field name is invalid
+	 * @param positions the hash table
+	 * @param position the position to be added
+	 * @return true, if the position has been added; false, if it was in the set already
 	 */
-	private int[] getFieldIndices(LogoList fields) throws ExtensionException {
-		int[] ix = new int[fields.size()];
-		int j = 0;
-		for (Iterator<Object> fi = fields.javaIterator(); fi.hasNext(); ) {
-			String fName = fi.next().toString();
-			int i = fb.getFieldIndex(fName);
-			if (i < 0) {
-				throw new ExtensionException(fName + " is not defined as a field in the factbase " + fb.toString());
+	private static boolean addPosition(int[] positions, int position) {
+		int mask = positions.length - 1;
+		int slot = (position * 0x9E3779B9) & mask;
+		while (positions[slot] != 0) {
+			if (positions[slot] == position + 1) {
+				return false;
 			}
-			ix[j] = i;
-			j++;
+			slot = (slot + 1) & mask;
+		}
+		positions[slot] = position + 1;
+		return true;
+	}
+	
+	/** Returns the number of facts satisfying the condition, as counted by the last call of {@link #retrieveN(int)} or 
+	 * {@link #sum(int)}.
+	 * 
+	 * @return the number of matching facts
+	 */
+	int getMatchCount() {
+		return matchCount;
+	}
+	
+	/** Helper method: checks if the fact with the given ID satisfies the condition by running the task. 
+	 * 
+	 * @param factID the ID of a fact that has not been retracted
+	 * @return true, if the fact satisfies the condition; otherwise, false
+	 * @throws ExtensionException if tracing fails
+	 */
+	private boolean satisfiesCondition(int factID) throws ExtensionException {
+		// only the fields used in the condition are read from the columns
+		loadValues(fb, factID, fIndices, values);
+		// run the reporter task
+		Object isValidFact = task.report(context, values);
+		// no trace messages are built unless tracing is on, so checking a fact allocates nothing
+		if (FactBaseExtension.isTracing()) {
+			trace(factID, isValidFact);
 		}
-		return ix;
+		return isValidFact != null && (Boolean)isValidFact;
 	}
 	
+	/** Helper method: Retrieves the values of the specified fields of the fact with the given ID into the given array, which 
+	 * is then ready to stick into a reporter task. The task does not keep the array, so it is reused for every fact.
+	 * 
+	 * @param fb the fact base
+	 * @param factID the ID of the given fact
+	 * @param fieldIndices the fields to be used (given as field indices)
+	 * @param values the array to store the values corresponding to the specified fields in
+	 */
+	static void loadValues(FactBase fb, int factID, int[] fieldIndices, Object[] values) {
+		for (int i = 0; i < fieldIndices.length; i++) {
+			values[i] = fb.getValue(factID, fieldIndices[i]);
+		}
+	}
 	
+	/** Helper method: writes the check of one fact to the NetLogo command center (only called when tracing is on).
+	 * 
+	 * @param factID the ID of the fact checked
+	 * @param isValidFact the result of the task
+	 * @throws ExtensionException if writing fails
+	 */
+	private void trace(int factID, Object isValidFact) throws ExtensionException {
+		FactBaseExtension.writeToNetLogo("checking fact: " + factID, false, context);
+		FactBaseExtension.writeToNetLogo("field values are: " + printArray(values), false, context);
+		FactBaseExtension.writeToNetLogo("task result is: " + isValidFact, false, context);
+	}
+
 	/** Helper method: returns a string representation of the given array of integers.
 	 * 
 	 * @param nums
@@ -260,21 +758,6 @@ public class Retrieval {
 		return buff.toString();
 	}
 
-	/** Helper method: returns a string representation of the given array list of objects.
-	 * 
-	 * @param objs array list of objects
-	 * @return a string representation of the given array list of objects
-	 */
-	private String printArrayList(ArrayList<Object> objs) {
-		StringBuilder buff = new StringBuilder("[");
-		for (Object i : objs) {
-			buff.append(" ");
-			buff.append(i);
-		}
-		buff.append(" ]");
-		return buff.toString();
-	}
-	
 	/** Returns the fact base.
 	 * 
 	 * @return the fact base this retrieval object works with
@@ -0,0 +1,193 @@
+/*
+ * ValueDictionary.java
+ * 
+ * Copyright (c) 2016 Centre for Policy Modelling 
+ * 
+ * This file is part of Factbase-NetLogoExtension.
+ * 
+ * Factbase-NetLogoExtension is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * Factbase-NetLogoExtension is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Factbase-NetLogo. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Ruth Meyer, Centre for Policy Modelling,
+ * Manchester Metropolitan University Business School, Manchester, M15 6BH, UK.
+ * ruth@cfpm.org
+ * 
+ */
+
+package org.cfpm.factbaseExtension;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/** This class implements the dictionary used to encode the (non-numeric) field values of all fact bases. Every distinct value
+ * is stored only once and is represented by a small int code in the columns of the fact bases (see {@link ObjectColumn}), so
+ * that repeated values such as status strings or agent references cost 4 bytes per fact, and identical values in different
+ * fact bases share one entry. There is one dictionary for all fact bases ({@link FactBaseExtension#dictionary}).
+ * 
+ * Entries are reference counted and their codes are reused once no fact refers to them any more. The codes held by columns
+ * of fact bases that are no longer reachable are released when the dictionary notices that these columns have been
+ * garbage collected.
+ * 
+ * Since the dictionary is static, it is shared by all workspaces running in the same JVM, e.g. the parallel runs of a 
+ * BehaviorSpace experiment. Therefore adding and releasing values is synchronized. Reading a value by its code, which happens 
+ * for every non-numeric value read from a column, takes no lock: the values are kept in an array that is only replaced by a 
+ * larger copy, published through a volatile field. A column only reads codes it holds a reference to, and the entry of a 
+ * referenced code does not change. Numeric fields (see {@link DoubleColumn}) do not use the dictionary at all.
+ * 
+ * @author Ruth Meyer
+ *
+ */
+class ValueDictionary {
+
+	/** Maps every value to its code */
+	private HashMap<Object, Integer> codes = new HashMap<Object, Integer>();
+	/** The values, indexed by code (null for unused codes); replaced by a larger copy when it is full, so it can be read without a lock */
+	private volatile Object[] values = new Object[64];
+	/** The number of references to each code */
+	private int[] refCounts = new int[64];
+	/** Stack of unused codes below {@link #nextCode} */
+	private int[] freeCodes = new int[16];
+	/** Number of entries in {@link #freeCodes} */
+	private int freeCount = 0;
+	/** The lowest code never used so far */
+	private int nextCode = 0;
+	
+	/** The codes of columns that have been garbage collected turn up here */
+	private ReferenceQueue<ObjectColumn> collected = new ReferenceQueue<ObjectColumn>();
+	/** Weak references to all columns using this dictionary (keeps the references themselves reachable) */
+	private HashSet<ColumnReference> columns = new HashSet<ColumnReference>();
+
+	/** A weak reference to a column which remembers the column's codes, so they can be released after the column is gone. */
+	private static class ColumnReference extends WeakReference<ObjectColumn> {
+		/** The codes of the referenced column */
+		final ObjectColumn.Codes codes;
+		
+		ColumnReference(ObjectColumn column, ReferenceQueue<ObjectColumn> queue) {
+			super(column, queue);
+			codes = column.codes;
+		}
+	}
+	
+	/** Registers a new column, so that its codes can be released once it has been garbage collected.
+	 * 
+	 * @param column the column using this dictionary
+	 */
+	synchronized void register(ObjectColumn column) {
+		columns.add(new ColumnReference(column, collected));
+	}
+	
+	/** Returns the code of the given value and counts one more reference to it. New values are added to the dictionary.
+	 * 
+	 * @param value a field value
+	 * @return the value's code
+	 */
+	synchronized int acquire(Object value) {
+		Integer code = codes.get(value);
+		if (code == null) {
+			releaseCollected();
+			code = newCode();
+			values[code] = value;
+			codes.put(value, code);
+		}
+		refCounts[code]++;
+		return code;
+	}
+	
+	/** Drops one reference to the given code. The entry is removed from the dictionary when it is no longer referenced.
+	 * 
+	 * @param code a value's code
+	 */
+	synchronized void release(int code) {
+		if (--refCounts[code] == 0) {
+			codes.remove(values[code]);
+			values[code] = null;
+			if (freeCount == freeCodes.length) {
+				freeCodes = Arrays.copyOf(freeCodes, freeCount * 2);
+			}
+			freeCodes[freeCount++] = code;
+		}
+	}
+	
+	/** Returns the code of the given value without adding it to the dictionary.
+	 * 
+	 * @param value a field value
+	 * @return the value's code, or -1 if no fact contains the value
+	 */
+	synchronized int lookup(Object value) {
+		Integer code = codes.get(value);
+		return (code == null) ? -1 : code;
+	}
+	
+	/** Returns the number of references to the given value, that means the number of rows of all columns holding it.
+	 * 
+	 * @param value a field value
+	 * @return the number of references (0 if the value is not in the dictionary)
+	 */
+	synchronized int references(Object value) {
+		Integer code = codes.get(value);
+		return (code == null) ? 0 : refCounts[code];
+	}
+	
+	/** Returns the value for the given code. Not synchronized, since the caller holds a reference to the code (see above).
+	 * 
+	 * @param code a value's code
+	 * @return the value
+	 */
+	Object get(int code) {
+		return values[code];
+	}
+	
+	/** Returns the number of distinct values in the dictionary.
+	 * 
+	 * @return the number of entries
+	 */
+	synchronized int size() {
+		return codes.size();
+	}
+	
+	/** Helper method: returns an unused code, growing the arrays if necessary.
+	 * 
+	 * @return a free code
+	 */
+	private int newCode() {
+		if (freeCount > 0) {
+			return freeCodes[--freeCount];
+		}
+		if (nextCode == values.length) {
+			// the copy is complete before it is published to readers
+			values = Arrays.copyOf(values, nextCode * 2);
+			refCounts = Arrays.copyOf(refCounts, nextCode * 2);
+		}
+		return nextCode++;
+	}
+	
+	/** Helper method: releases all codes held by columns that have been garbage collected.
+	 * 
+	 */
+	private void releaseCollected() {
+		ColumnReference ref;
+		while ((ref = (ColumnReference)collected.poll()) != null) {
+			columns.remove(ref);
+			int[] held = ref.codes.codes;
+			for (int row = 0; row < held.length; row++) {
+				if (held[row] >= 0) {
+					release(held[row]);
+				}
+			}
+		}
+	}
+
+}